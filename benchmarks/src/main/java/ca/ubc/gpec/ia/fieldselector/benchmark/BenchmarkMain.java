@@ -0,0 +1,29 @@
+/*
+ * run the benchmarks with allocation rates (gc profiler) added to the usual
+ * JMH command line
+ *
+ * java -jar target/benchmarks.jar [JMH options] [regexp of benchmarks to run]
+ * e.g. java -jar target/benchmarks.jar -p fieldCount=1000 ParserBenchmark
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *
+ * @author samuelc
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(new CommandLineOptions(args));
+        options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * which fields to draw (inView) and which field is under the mouse (hit test)
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfViewGridIndex;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CullingBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int fieldCount;
+    private ArrayList<FieldOfView> fields;
+    private FieldOfViewGridIndex index;
+    private ViewWindow viewWindow;
+    private ArrayList<FieldOfView> result;
+    private int mouseX; // original image coordinates, centre of the view window
+    private int mouseY;
+
+    @Setup
+    public void setup() {
+        fields = Fixtures.fields(fieldCount);
+        index = new FieldOfViewGridIndex(fields, FieldOfViewGridIndex.DEFAULT_CELL_SIZE);
+        viewWindow = Fixtures.viewWindow();
+        result = new ArrayList<FieldOfView>();
+        mouseX = (viewWindow.getOriginalX() + viewWindow.getOriginalX2()) / 2;
+        mouseY = (viewWindow.getOriginalY() + viewWindow.getOriginalY2()) / 2;
+    }
+
+    @Benchmark
+    public int inViewLinear() {
+        int count = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).inView(viewWindow)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int inViewGridIndex() {
+        result.clear();
+        index.inView(viewWindow, result);
+        return result.size();
+    }
+
+    @Benchmark
+    public FieldOfView hitTestLinear() {
+        FieldOfView hit = null;
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).inCircle(mouseX, mouseY)) { // same test as topmostAt()
+                hit = fields.get(i); // last one is drawn on top
+            }
+        }
+        return hit;
+    }
+
+    @Benchmark
+    public FieldOfView hitTestGridIndex() {
+        return index.topmostAt(mouseX, mouseY);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * realistic test data for the benchmarks
+ *
+ * a slide of 100000 x 80000 pixel (original image), preview 25 times smaller.
+ * fields are clustered around a few tissue regions, most not scored yet, a
+ * quarter scored, one current.
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParamStringEncoder;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ *
+ * @author samuelc
+ */
+final class Fixtures {
+
+    static final int ORIGINAL_WIDTH = 100000;
+    static final int ORIGINAL_HEIGHT = 80000;
+    static final float SCALE_TO_ORIGINAL = 25f;
+    static final int PANEL_WIDTH = 1200;
+    static final int PANEL_HEIGHT = 900;
+    static final int DIAMETER = 4000;
+    static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    /**
+     * return fieldCount fields, always the same for the same fieldCount
+     *
+     * @param fieldCount
+     * @return
+     */
+    static ArrayList<FieldOfView> fields(int fieldCount) {
+        Random random = new Random(SEED);
+        int regions = 1 + fieldCount / 500;
+        int[] regionX = new int[regions];
+        int[] regionY = new int[regions];
+        for (int i = 0; i < regions; i++) {
+            regionX[i] = 10000 + random.nextInt(ORIGINAL_WIDTH - 20000);
+            regionY[i] = 10000 + random.nextInt(ORIGINAL_HEIGHT - 20000);
+        }
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            int region = random.nextInt(regions);
+            int x = clamp(regionX[region] + (int) (random.nextGaussian() * 8000), ORIGINAL_WIDTH);
+            int y = clamp(regionY[region] + (int) (random.nextGaussian() * 8000), ORIGINAL_HEIGHT);
+            ScoringState scoringState = random.nextInt(4) == 0 ? ScoringState.SCORED : ScoringState.NOT_SCORED;
+            ViewingState viewingState = i == fieldCount / 2 ? ViewingState.CURRENT : ViewingState.NOT_CURRENT;
+            Ki67State ki67State = Ki67State.values()[Math.min(random.nextInt(6), Ki67State.values().length - 1)];
+            result.add(new FieldOfView(x, y, DIAMETER + random.nextInt(3) * 1000 - 1000, viewingState, scoringState, ki67State));
+        }
+        return result;
+    }
+
+    /**
+     * return param string of fields(fieldCount)
+     *
+     * @param fieldCount
+     * @return
+     */
+    static String paramString(int fieldCount) {
+        return FieldSelectionParamStringEncoder.encode(fields(fieldCount));
+    }
+
+    /**
+     * return view window zoomed in somewhere in the middle of the slide
+     *
+     * @return
+     */
+    static ViewWindow viewWindow() {
+        ViewWindow result = new ViewWindow(0, 0, PANEL_WIDTH, PANEL_HEIGHT,
+                Math.round(ORIGINAL_WIDTH / SCALE_TO_ORIGINAL), Math.round(ORIGINAL_HEIGHT / SCALE_TO_ORIGINAL),
+                0.3f, SCALE_TO_ORIGINAL);
+        result.changeMagnification(-10);
+        result.move(PANEL_WIDTH, PANEL_HEIGHT);
+        return result;
+    }
+
+    /**
+     * return tissue mask of the slide at preview resolution (4000 x 3200,
+     * about 12 megapixel) ... a few elliptical tissue regions, non 0 = tissue
+     *
+     * @return
+     */
+    static byte[] tissueMask() {
+        int width = maskWidth();
+        int height = maskHeight();
+        Random random = new Random(SEED);
+        byte[] result = new byte[width * height];
+        for (int region = 0; region < 5; region++) {
+            int centreX = width / 8 + random.nextInt(width * 3 / 4);
+            int centreY = height / 8 + random.nextInt(height * 3 / 4);
+            int radiusX = width / 10 + random.nextInt(width / 8);
+            int radiusY = height / 10 + random.nextInt(height / 8);
+            for (int y = Math.max(0, centreY - radiusY); y < Math.min(height, centreY + radiusY); y++) {
+                double dy = (y - centreY) / (double) radiusY;
+                for (int x = Math.max(0, centreX - radiusX); x < Math.min(width, centreX + radiusX); x++) {
+                    double dx = (x - centreX) / (double) radiusX;
+                    if (dx * dx + dy * dy <= 1) {
+                        result[y * width + x] = 1;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static int maskWidth() {
+        return Math.round(ORIGINAL_WIDTH / SCALE_TO_ORIGINAL);
+    }
+
+    static int maskHeight() {
+        return Math.round(ORIGINAL_HEIGHT / SCALE_TO_ORIGINAL);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max - 1, value));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * current field and number of scored fields straight from a param string:
+ * eager parser vs LazySelectionView (only the current field is decoded)
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParamStringParser;
+import ca.ubc.gpec.ia.fieldselector.model.LazySelectionView;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazySelectionViewBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int fieldCount;
+    private String paramString;
+
+    @Setup
+    public void setup() {
+        paramString = Fixtures.paramString(fieldCount);
+    }
+
+    @Benchmark
+    public int currentAndScoredCountEager() throws FieldSelectionParamStringParseException {
+        FieldSelectionParamStringParser parser = new FieldSelectionParamStringParser(paramString);
+        FieldOfView current = parser.getCurrentScoringSelection();
+        return current.getX() + parser.getScoredSelections().size();
+    }
+
+    @Benchmark
+    public int currentAndScoredCountLazy() {
+        LazySelectionView view = new LazySelectionView(paramString);
+        FieldOfView current = view.getCurrentScoringSelection();
+        return current.getX() + view.getScoredCount();
+    }
+
+    @Benchmark
+    public ArrayList<FieldOfView> scoredSelectionsEager() throws FieldSelectionParamStringParseException {
+        return new FieldSelectionParamStringParser(paramString).getScoredSelections();
+    }
+
+    @Benchmark
+    public ArrayList<FieldOfView> scoredSelectionsLazy() {
+        return new LazySelectionView(paramString).getScoredSelections();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * which unscored field to go to next: k-d tree of FieldNavigator vs scanning
+ * all fields
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.analysis.FieldNavigator;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigatorBenchmark {
+
+    private static final int QUERIES = 1024; // power of 2
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int fieldCount;
+    private ArrayList<FieldOfView> fields;
+    private FieldNavigator navigator;
+    private int[] queryX; // original image coordinates
+    private int[] queryY;
+    private int query;
+
+    @Setup
+    public void setup() {
+        fields = Fixtures.fields(fieldCount);
+        navigator = new FieldNavigator(fields);
+        Random random = new Random(Fixtures.SEED);
+        queryX = new int[QUERIES];
+        queryY = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryX[i] = random.nextInt(Fixtures.ORIGINAL_WIDTH);
+            queryY[i] = random.nextInt(Fixtures.ORIGINAL_HEIGHT);
+        }
+    }
+
+    @Benchmark
+    public FieldOfView nearestUnscoredLinear() {
+        int i = query++ & (QUERIES - 1);
+        long x = queryX[i];
+        long y = queryY[i];
+        FieldOfView nearest = null;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int j = 0; j < fields.size(); j++) {
+            FieldOfView field = fields.get(j);
+            if (field.getScoringState() == ScoringState.SCORED) {
+                continue;
+            }
+            long dx = field.getX() - x;
+            long dy = field.getY() - y;
+            long distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearest = field;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    @Benchmark
+    public FieldOfView nearestUnscoredNavigator() {
+        int i = query++ & (QUERIES - 1);
+        return navigator.nearestUnscored(queryX[i], queryY[i]);
+    }
+}
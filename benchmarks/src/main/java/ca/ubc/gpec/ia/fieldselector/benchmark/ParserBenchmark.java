@@ -0,0 +1,65 @@
+/*
+ * parsing/encoding the param string and the selection queries
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParamStringParser;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int fieldCount;
+    private String paramString;
+    private FieldSelectionParamStringParser parser;
+
+    @Setup
+    public void setup() throws FieldSelectionParamStringParseException {
+        paramString = Fixtures.paramString(fieldCount);
+        parser = new FieldSelectionParamStringParser(paramString);
+    }
+
+    @Benchmark
+    public FieldSelectionParamStringParser parse() throws FieldSelectionParamStringParseException {
+        return new FieldSelectionParamStringParser(paramString);
+    }
+
+    @Benchmark
+    public String generateFieldSelectionParamString() {
+        return parser.generateFieldSelectionParamString();
+    }
+
+    @Benchmark
+    public ArrayList<FieldOfView> getScoredSelections() {
+        return parser.getScoredSelections();
+    }
+
+    @Benchmark
+    public FieldOfView getCurrentScoringSelection() {
+        return parser.getCurrentScoringSelection();
+    }
+}
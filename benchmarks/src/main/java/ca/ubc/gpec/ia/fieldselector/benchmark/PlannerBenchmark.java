@@ -0,0 +1,64 @@
+/*
+ * systematic random sampling over a 12 megapixel tissue mask: building the
+ * integral of the mask and planning the field centres
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.analysis.TissueSamplingPlanner;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlannerBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int targetCount; // fields wanted over the tissue
+    private byte[] mask;
+    private TissueSamplingPlanner planner;
+    private double spacing;
+    private long seed = Fixtures.SEED;
+
+    @Setup
+    public void setup() {
+        mask = Fixtures.tissueMask();
+        planner = new TissueSamplingPlanner(mask, Fixtures.maskWidth(), Fixtures.maskHeight(), Fixtures.SCALE_TO_ORIGINAL);
+        spacing = planner.spacingFor(targetCount);
+    }
+
+    @Benchmark
+    public TissueSamplingPlanner buildIntegral() {
+        return new TissueSamplingPlanner(mask, Fixtures.maskWidth(), Fixtures.maskHeight(), Fixtures.SCALE_TO_ORIGINAL);
+    }
+
+    @Benchmark
+    public int[] planCentres() {
+        // different grid offset every time, like planning another slide
+        return planner.planCentres(spacing, Fixtures.DIAMETER, 0.5, 0.5, new Random(seed++));
+    }
+
+    @Benchmark
+    public int[] buildAndPlan() {
+        TissueSamplingPlanner fresh = new TissueSamplingPlanner(mask, Fixtures.maskWidth(), Fixtures.maskHeight(), Fixtures.SCALE_TO_ORIGINAL);
+        return fresh.planCentres(fresh.spacingFor(targetCount), Fixtures.DIAMETER, 0.5, 0.5, new Random(seed++));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * ViewWindow projection of many fields, see ViewWindowNavigationBenchmark for
+ * zoom and move
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewWindowBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int fieldCount;
+    private ViewWindow viewWindow;
+    private int[] realX; // preview/lowres x of the fields
+    private int[] viewX;
+
+    @Setup
+    public void setup() {
+        viewWindow = Fixtures.viewWindow();
+        ArrayList<FieldOfView> fields = Fixtures.fields(fieldCount);
+        realX = new int[fields.size()];
+        viewX = new int[fields.size()];
+        for (int i = 0; i < realX.length; i++) {
+            realX[i] = Math.round(fields.get(i).getX() / Fixtures.SCALE_TO_ORIGINAL);
+        }
+    }
+
+    @Benchmark
+    public int[] projectViewXScalar() {
+        for (int i = 0; i < realX.length; i++) {
+            viewX[i] = viewWindow.projectViewX(realX[i]);
+        }
+        return viewX;
+    }
+
+    @Benchmark
+    public int[] projectViewXBulk() {
+        viewWindow.projectViewX(realX, viewX, realX.length);
+        return viewX;
+    }
+
+    @Benchmark
+    public int[] projectOriginalXBulk() {
+        viewWindow.projectOriginalX(realX, viewX, realX.length);
+        return viewX;
+    }
+}
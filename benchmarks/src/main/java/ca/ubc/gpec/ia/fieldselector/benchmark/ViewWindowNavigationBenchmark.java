@@ -0,0 +1,54 @@
+/*
+ * ViewWindow zoom and move ... independent of the number of fields
+ */
+package ca.ubc.gpec.ia.fieldselector.benchmark;
+
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author samuelc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewWindowNavigationBenchmark {
+
+    private ViewWindow viewWindow;
+    private int zoomDirection = 1;
+    private int moveDirection = 1;
+
+    @Setup
+    public void setup() {
+        viewWindow = Fixtures.viewWindow();
+    }
+
+    @Benchmark
+    public float changeMagnification() {
+        // zoom in and out ... stays within the limits
+        viewWindow.changeMagnification(zoomDirection);
+        zoomDirection = -zoomDirection;
+        return viewWindow.getMagnification();
+    }
+
+    @Benchmark
+    public int move() {
+        viewWindow.move(moveDirection * 10, moveDirection * 10);
+        moveDirection = -moveDirection;
+        return viewWindow.getX();
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * which unscored field to go to next, so that the view window does not jump
+ * back and forth across the slide
+ *
+ * - nearestUnscored() ... the closest field not SCORED yet
+ * - tour() ... order to visit all fields not SCORED yet: nearest neighbour,
+ *   then improved by 2-opt (swap two edges if the path gets shorter)
+ *
+ * the fields not scored are kept in a k-d tree (in arrays).  as fields become
+ * SCORED they are only marked dead in the tree (O(log n)); fields that become
+ * unscored again, move or are added go to a small pending list.  the tree is
+ * rebuilt when the pending list or the dead part gets too big.
+ *
+ * the navigator listens to its fields ... call close() when done with it,
+ * otherwise the fields keep it reachable.
+ *
+ * NOTE: not thread safe, use from the UI thread
+ */
+package ca.ubc.gpec.ia.fieldselector.analysis;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfViewListener;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldNavigator implements FieldOfViewListener, AutoCloseable {
+
+    public static final int MAX_TWO_OPT_PASSES = 50;
+    private static final int PENDING = -1; // not scored, in pending list
+    private static final int OUTSIDE = -2; // scored, not in tree
+    private final IdentityHashMap<FieldOfView, Integer> tracked; // field -> position in tree, PENDING or OUTSIDE
+    private final ArrayList<FieldOfView> pending;
+    // k-d tree, node of [lo, hi) is at (lo + hi) / 2, split by x on even depth, y on odd
+    private FieldOfView[] nodes = new FieldOfView[0];
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private boolean[] dead = new boolean[0];
+    private int[] alive = new int[0]; // number of alive nodes in subtree of node
+    private int deadCount;
+    // state of the current search
+    private long bestDistance;
+    private FieldOfView best;
+
+    /**
+     * constructor
+     *
+     * @param selections
+     */
+    public FieldNavigator(List<? extends FieldOfView> selections) {
+        tracked = new IdentityHashMap<FieldOfView, Integer>();
+        pending = new ArrayList<FieldOfView>();
+        for (FieldOfView field : selections) {
+            tracked.put(field, field.isScored() ? OUTSIDE : PENDING);
+            if (!field.isScored()) {
+                pending.add(field);
+            }
+            field.addListener(this);
+        }
+        rebuild();
+    }
+
+    /**
+     * add field
+     *
+     * @param field
+     */
+    public void add(FieldOfView field) {
+        if (tracked.containsKey(field)) {
+            return;
+        }
+        tracked.put(field, OUTSIDE);
+        field.addListener(this);
+        if (!field.isScored()) {
+            addPending(field);
+        }
+    }
+
+    /**
+     * remove field e.g. deleted by the user
+     *
+     * @param field
+     * @return false if not added
+     */
+    public boolean remove(FieldOfView field) {
+        if (!tracked.containsKey(field)) {
+            return false;
+        }
+        takeOut(field);
+        tracked.remove(field);
+        field.removeListener(this);
+        return true;
+    }
+
+    /**
+     * remove all fields i.e. stop listening to them ... the navigator is
+     * empty afterwards
+     */
+    @Override
+    public void close() {
+        for (FieldOfView field : tracked.keySet()) {
+            field.removeListener(this);
+        }
+        tracked.clear();
+        pending.clear();
+        nodes = new FieldOfView[0];
+        rebuild();
+    }
+
+    /**
+     * return number of fields not scored
+     *
+     * @return
+     */
+    public int getUnscoredCount() {
+        return (nodes.length - deadCount) + pending.size();
+    }
+
+    /**
+     * return field not scored closest to (x, y), null if none
+     *
+     * @param x - original image coordinate
+     * @param y - original image coordinate
+     * @return
+     */
+    public FieldOfView nearestUnscored(int x, int y) {
+        return nearest(x, y, null);
+    }
+
+    /**
+     * return field not scored closest to current (current itself excluded),
+     * null if none
+     *
+     * @param current
+     * @return
+     */
+    public FieldOfView nearestUnscored(FieldOfView current) {
+        return nearest(current.getX(), current.getY(), current);
+    }
+
+    /**
+     * return order to visit all fields not scored, starting at current
+     * (current itself excluded)
+     *
+     * @param current
+     * @return
+     */
+    public ArrayList<FieldOfView> tour(FieldOfView current) {
+        return tour(current.getX(), current.getY(), current);
+    }
+
+    /**
+     * return order to visit all fields not scored, starting at (x, y)
+     *
+     * @param x - original image coordinate
+     * @param y - original image coordinate
+     * @return
+     */
+    public ArrayList<FieldOfView> tour(int x, int y) {
+        return tour(x, y, null);
+    }
+
+    @Override
+    public void stateChanged(FieldOfView field, ViewingState oldViewingState, ScoringState oldScoringState) {
+        Integer position = tracked.get(field);
+        if (position == null) {
+            return;
+        }
+        if (field.isScored()) {
+            takeOut(field);
+        } else if (position >= 0 && dead[position]) {
+            setAlive(position, true);
+        } else if (position == OUTSIDE) {
+            addPending(field);
+        }
+    }
+
+    @Override
+    public void geometryChanged(FieldOfView field, int oldX, int oldY, int oldDiameter) {
+        Integer position = tracked.get(field);
+        if (position != null && position >= 0) {
+            // tree position no longer valid
+            takeOut(field);
+            if (!field.isScored()) {
+                addPending(field);
+            }
+        }
+    }
+
+    private FieldOfView nearest(int x, int y, FieldOfView exclude) {
+        best = null;
+        bestDistance = Long.MAX_VALUE;
+        search(0, nodes.length, 0, x, y, exclude);
+        for (FieldOfView field : pending) {
+            if (field != exclude) {
+                consider(field, distance(x, y, field.getX(), field.getY()));
+            }
+        }
+        FieldOfView result = best;
+        best = null;
+        return result;
+    }
+
+    private void search(int lo, int hi, int depth, int x, int y, FieldOfView exclude) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (alive[mid] == 0) {
+            return; // whole subtree scored
+        }
+        if (!dead[mid] && nodes[mid] != exclude) {
+            consider(nodes[mid], distance(x, y, xs[mid], ys[mid]));
+        }
+        long diff = (depth & 1) == 0 ? (long) x - xs[mid] : (long) y - ys[mid];
+        if (diff < 0) {
+            search(lo, mid, depth + 1, x, y, exclude);
+            if (diff * diff < bestDistance) {
+                search(mid + 1, hi, depth + 1, x, y, exclude);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, x, y, exclude);
+            if (diff * diff < bestDistance) {
+                search(lo, mid, depth + 1, x, y, exclude);
+            }
+        }
+    }
+
+    private void consider(FieldOfView field, long distance) {
+        if (distance < bestDistance) {
+            bestDistance = distance;
+            best = field;
+        }
+    }
+
+    private ArrayList<FieldOfView> tour(int x, int y, FieldOfView exclude) {
+        rebuild(); // everything in the tree i.e. no pending
+        // 1. nearest neighbour ... visited nodes are marked dead, restored below
+        ArrayList<FieldOfView> path = new ArrayList<FieldOfView>();
+        int currentX = x;
+        int currentY = y;
+        FieldOfView next;
+        while ((next = nearest(currentX, currentY, exclude)) != null) {
+            path.add(next);
+            setAlive(tracked.get(next), false);
+            currentX = next.getX();
+            currentY = next.getY();
+        }
+        for (FieldOfView field : path) {
+            setAlive(tracked.get(field), true);
+        }
+        // 2. 2-opt on the open path starting at (x, y)
+        int n = path.size() + 1;
+        int[] px = new int[n];
+        int[] py = new int[n];
+        px[0] = x;
+        py[0] = y;
+        FieldOfView[] order = new FieldOfView[n];
+        for (int i = 1; i < n; i++) {
+            order[i] = path.get(i - 1);
+            px[i] = order[i].getX();
+            py[i] = order[i].getY();
+        }
+        boolean improved = true;
+        for (int pass = 0; pass < MAX_TWO_OPT_PASSES && improved; pass++) {
+            improved = false;
+            for (int i = 0; i < n - 2; i++) {
+                for (int j = i + 2; j < n; j++) {
+                    // replace edges (i, i+1) and (j, j+1) with (i, j) and (i+1, j+1) ... j + 1 == n is the open end
+                    double before = length(px, py, i, i + 1);
+                    double after = length(px, py, i, j);
+                    if (j + 1 < n) {
+                        before += length(px, py, j, j + 1);
+                        after += length(px, py, i + 1, j + 1);
+                    }
+                    if (after < before - 1e-9) {
+                        reverse(px, py, order, i + 1, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(n - 1);
+        for (int i = 1; i < n; i++) {
+            result.add(order[i]);
+        }
+        return result;
+    }
+
+    /**
+     * field is scored/removed/moved ... take it out of tree/pending list
+     */
+    private void takeOut(FieldOfView field) {
+        int position = tracked.get(field);
+        if (position >= 0) {
+            if (!dead[position]) {
+                setAlive(position, false);
+            }
+            nodes[position] = null; // never comes back to this position
+        } else if (position == PENDING) {
+            pending.remove(field);
+        }
+        tracked.put(field, OUTSIDE);
+        if (deadCount > nodes.length / 2 && deadCount > 64) {
+            rebuild();
+        }
+    }
+
+    private void addPending(FieldOfView field) {
+        tracked.put(field, PENDING);
+        pending.add(field);
+        if (pending.size() > 32 + (int) Math.sqrt(nodes.length)) {
+            rebuild();
+        }
+    }
+
+    private void setAlive(int position, boolean value) {
+        dead[position] = !value;
+        deadCount += value ? -1 : 1;
+        int lo = 0;
+        int hi = nodes.length;
+        while (true) {
+            int mid = (lo + hi) >>> 1;
+            alive[mid] += value ? 1 : -1;
+            if (mid == position) {
+                return;
+            }
+            if (position < mid) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+    }
+
+    /**
+     * build tree with all fields not scored
+     */
+    private void rebuild() {
+        ArrayList<FieldOfView> unscored = new ArrayList<FieldOfView>(getUnscoredCount());
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != null && !dead[i]) {
+                unscored.add(nodes[i]);
+            } else if (nodes[i] != null) {
+                tracked.put(nodes[i], OUTSIDE);
+            }
+        }
+        unscored.addAll(pending);
+        pending.clear();
+        int n = unscored.size();
+        nodes = unscored.toArray(new FieldOfView[n]);
+        xs = new int[n];
+        ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = nodes[i].getX();
+            ys[i] = nodes[i].getY();
+        }
+        dead = new boolean[n];
+        alive = new int[n];
+        deadCount = 0;
+        build(0, n, 0);
+        for (int i = 0; i < n; i++) {
+            tracked.put(nodes[i], i);
+        }
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, (depth & 1) == 0 ? xs : ys);
+        alive[mid] = hi - lo;
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * quickselect ... element k of [left, right] ends up at k, smaller/equal
+     * ones before, bigger/equal ones after
+     */
+    private void select(int left, int right, int k, int[] keys) {
+        while (left < right) {
+            int pivot = keys[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        FieldOfView node = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = node;
+        int t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+    }
+
+    private static long distance(int x1, int y1, int x2, int y2) {
+        long dX = (long) x1 - x2;
+        long dY = (long) y1 - y2;
+        return dX * dX + dY * dY;
+    }
+
+    private static double length(int[] px, int[] py, int i, int j) {
+        return Math.sqrt(distance(px[i], py[i], px[j], py[j]));
+    }
+
+    private static void reverse(int[] px, int[] py, FieldOfView[] order, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = px[i];
+            px[i] = px[j];
+            px[j] = t;
+            t = py[i];
+            py[i] = py[j];
+            py[j] = t;
+            FieldOfView f = order[i];
+            order[i] = order[j];
+            order[j] = f;
+        }
+    }
+}
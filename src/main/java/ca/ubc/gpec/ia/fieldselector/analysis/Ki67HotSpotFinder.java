@@ -0,0 +1,243 @@
+/*
+ * propose fields of view at the Ki67 hot spots of a slide
+ *
+ * input is a density raster of Ki67 positive cells (e.g. number of positive
+ * nuclei per pixel) at preview/lowres resolution.  a summed area table of the
+ * raster gives the sum of any rectangle with 4 lookups, so every possible field
+ * position is scored in O(1).
+ *
+ * the k best fields that do not overlap each other are picked greedily (best
+ * first), their Ki67State comes from the mean density within the field (see
+ * thresholds), their x/y/diameter are in original image coordinates i.e. the
+ * result can be encoded with FieldSelectionParamStringEncoder as is.
+ *
+ * NOTE: a field is scored by the square around its circle
+ *
+ * building the table and searching are done in parallel over bands of rows.
+ */
+package ca.ubc.gpec.ia.fieldselector.analysis;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * @author samuelc
+ */
+public class Ki67HotSpotFinder {
+
+    public static final int MIN_BAND_ROWS = 64; // rows per parallel task, at least
+    private final int width;
+    private final int height;
+    private final float scaleToOriginal;
+    private final long[] table; // (width + 1) x (height + 1), table[y][x] = sum of density[0..y)[0..x)
+
+    /**
+     * constructor ... builds the summed area table
+     *
+     * @param density - width x height, row by row, must not be negative
+     * @param width
+     * @param height
+     * @param scaleToOriginal - see ViewWindow.getScaleToOriginal()
+     */
+    public Ki67HotSpotFinder(int[] density, int width, int height, float scaleToOriginal) {
+        if (density.length < width * height) {
+            throw new IllegalArgumentException("density raster too small: " + density.length + " < " + width + " x " + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.scaleToOriginal = scaleToOriginal;
+        table = new long[(width + 1) * (height + 1)];
+        int stride = width + 1;
+        // 1. prefix sums along each row ... rows are independent
+        IntStream.range(0, bandCount(height)).parallel().forEach(band -> {
+            for (int y = bandStart(band, height); y < bandStart(band + 1, height); y++) {
+                long sum = 0;
+                int in = y * width;
+                int out = (y + 1) * stride + 1;
+                for (int x = 0; x < width; x++) {
+                    sum += density[in + x];
+                    table[out + x] = sum;
+                }
+            }
+        });
+        // 2. prefix sums down each column ... columns are independent
+        IntStream.range(0, bandCount(width)).parallel().forEach(band -> {
+            int from = bandStart(band, width) + 1;
+            int to = bandStart(band + 1, width) + 1;
+            for (int y = 2; y <= height; y++) {
+                int row = y * stride;
+                int previous = row - stride;
+                for (int x = from; x < to; x++) {
+                    table[row + x] += table[previous + x];
+                }
+            }
+        });
+    }
+
+    /**
+     * return sum of density within [x, x2) x [y, y2) (preview/lowres
+     * coordinates) ... the rectangle is clipped to the raster
+     *
+     * @param x
+     * @param y
+     * @param x2 - exclusive
+     * @param y2 - exclusive
+     * @return
+     */
+    public long sum(int x, int y, int x2, int y2) {
+        x = Math.max(0, Math.min(width, x));
+        x2 = Math.max(x, Math.min(width, x2));
+        y = Math.max(0, Math.min(height, y));
+        y2 = Math.max(y, Math.min(height, y2));
+        int stride = width + 1;
+        return table[y2 * stride + x2] - table[y * stride + x2] - table[y2 * stride + x] + table[y * stride + x];
+    }
+
+    /**
+     * return mean density within field
+     *
+     * @param field - original image coordinates
+     * @return
+     */
+    public double meanDensity(FieldOfView field) {
+        int side = side(field.getDiamter());
+        int x = Math.round(field.getX() / scaleToOriginal - side / 2f);
+        int y = Math.round(field.getY() / scaleToOriginal - side / 2f);
+        return (double) sum(x, y, x + side, y + side) / ((long) side * side);
+    }
+
+    /**
+     * propose up to k fields, best first
+     *
+     * @param k
+     * @param diameter - of the fields, in original image pixel
+     * @param thresholds - mean density at which LOW, MEDIUM, HIGH, HOT_SPOT
+     * start (below the first is NEGLIGIBLE), ascending
+     * @return
+     */
+    public ArrayList<FieldOfView> propose(int k, int diameter, double[] thresholds) {
+        if (thresholds.length != Ki67State.values().length - 1) {
+            throw new IllegalArgumentException("need " + (Ki67State.values().length - 1) + " thresholds: " + thresholds.length);
+        }
+        int side = side(diameter);
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>();
+        if (side > width || side > height) {
+            return result; // field does not fit
+        }
+        int positionsY = height - side + 1;
+        int[] chosenX = new int[k];
+        int[] chosenY = new int[k];
+        for (int n = 0; n < k; n++) {
+            final int chosen = n;
+            // best position of every band, then best of all
+            long[] best = IntStream.range(0, bandCount(positionsY)).parallel()
+                    .mapToObj(band -> bestInBand(bandStart(band, positionsY), bandStart(band + 1, positionsY), side, chosenX, chosenY, chosen))
+                    .reduce(null, Ki67HotSpotFinder::better);
+            if (best == null) {
+                break; // no room left
+            }
+            chosenX[n] = (int) best[1];
+            chosenY[n] = (int) best[2];
+            double mean = (double) best[0] / ((long) side * side);
+            int level = 0;
+            while (level < thresholds.length && mean >= thresholds[level]) {
+                level++;
+            }
+            result.add(new FieldOfView(
+                    Math.round((chosenX[n] + side / 2f) * scaleToOriginal),
+                    Math.round((chosenY[n] + side / 2f) * scaleToOriginal),
+                    diameter, ViewingState.NOT_CURRENT, ScoringState.NOT_SCORED, Ki67State.values()[level]));
+        }
+        return result;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getScaleToOriginal() {
+        return scaleToOriginal;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    /**
+     * return {sum, x, y} of the best position with top row within [fromY, toY)
+     * that does not overlap the chosen ones, null if none
+     */
+    private long[] bestInBand(int fromY, int toY, int side, int[] chosenX, int[] chosenY, int chosen) {
+        int stride = width + 1;
+        long bestSum = -1;
+        int bestX = 0;
+        int bestY = 0;
+        for (int y = fromY; y < toY; y++) {
+            int top = y * stride;
+            int bottom = (y + side) * stride;
+            for (int x = 0; x + side <= width; x++) {
+                long sum = table[bottom + x + side] - table[top + x + side] - table[bottom + x] + table[top + x];
+                // overlap check only for a would-be best ... rare
+                if (sum > bestSum && !overlaps(x, y, side, chosenX, chosenY, chosen)) {
+                    bestSum = sum;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+        }
+        return bestSum < 0 ? null : new long[]{bestSum, bestX, bestY};
+    }
+
+    private static boolean overlaps(int x, int y, int side, int[] chosenX, int[] chosenY, int chosen) {
+        for (int i = 0; i < chosen; i++) {
+            if (Math.abs(x - chosenX[i]) < side && Math.abs(y - chosenY[i]) < side) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * higher sum wins, then smaller y, then smaller x i.e. same result however
+     * the bands are scheduled
+     */
+    private static long[] better(long[] a, long[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a[0] != b[0]) {
+            return a[0] > b[0] ? a : b;
+        }
+        if (a[2] != b[2]) {
+            return a[2] < b[2] ? a : b;
+        }
+        return a[1] <= b[1] ? a : b;
+    }
+
+    /**
+     * side of the square around a field, in preview/lowres pixel
+     */
+    private int side(int diameter) {
+        return Math.max(1, Math.round(Math.abs(diameter) / scaleToOriginal));
+    }
+
+    private static int bandCount(int rows) {
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, rows / MIN_BAND_ROWS));
+    }
+
+    private static int bandStart(int band, int rows) {
+        return (int) ((long) rows * band / bandCount(rows));
+    }
+}
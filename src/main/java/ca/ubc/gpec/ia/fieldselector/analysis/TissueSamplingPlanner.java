@@ -0,0 +1,188 @@
+/*
+ * systematic random sampling of fields of view over the tissue of a slide
+ *
+ * input is a binary tissue mask (non 0 = tissue) at any (low) resolution, the
+ * mask pixel to original image pixel ratio being scaleToOriginal.  an integral
+ * (summed area table) of the mask gives the tissue fraction of any square in
+ * O(1).
+ *
+ * the fields are placed on a grid with the given spacing, the whole grid
+ * shifted by one random offset (systematic random sampling) and each field
+ * optionally jittered within its grid cell.  fields with less than
+ * minTissueFraction tissue within the square around them are dropped.
+ *
+ * only primitive arrays are used i.e. no objects per candidate field.
+ */
+package ca.ubc.gpec.ia.fieldselector.analysis;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *
+ * @author samuelc
+ */
+public class TissueSamplingPlanner {
+
+    private final int width;
+    private final int height;
+    private final double scaleToOriginal;
+    private final int[] integral; // (width + 1) x (height + 1), number of tissue pixels in [0..y)[0..x)
+
+    /**
+     * constructor ... builds the integral of mask
+     *
+     * @param mask - width x height, row by row, non 0 = tissue
+     * @param width
+     * @param height
+     * @param scaleToOriginal - original image pixel per mask pixel
+     */
+    public TissueSamplingPlanner(byte[] mask, int width, int height, double scaleToOriginal) {
+        if ((long) (width + 1) * (height + 1) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("mask too big, use a lower resolution: " + width + " x " + height);
+        }
+        if (mask.length < width * height) {
+            throw new IllegalArgumentException("mask too small: " + mask.length + " < " + width + " x " + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.scaleToOriginal = scaleToOriginal;
+        integral = new int[(width + 1) * (height + 1)];
+        int stride = width + 1;
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            int in = y * width;
+            int out = (y + 1) * stride + 1;
+            int above = y * stride + 1;
+            for (int x = 0; x < width; x++) {
+                rowSum += mask[in + x] != 0 ? 1 : 0;
+                integral[out + x] = integral[above + x] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * return number of tissue pixels within [x, x2) x [y, y2) (mask
+     * coordinates) ... clipped to the mask
+     *
+     * @param x
+     * @param y
+     * @param x2 - exclusive
+     * @param y2 - exclusive
+     * @return
+     */
+    public int tissuePixels(int x, int y, int x2, int y2) {
+        x = Math.max(0, Math.min(width, x));
+        x2 = Math.max(x, Math.min(width, x2));
+        y = Math.max(0, Math.min(height, y));
+        y2 = Math.max(y, Math.min(height, y2));
+        int stride = width + 1;
+        return integral[y2 * stride + x2] - integral[y * stride + x2] - integral[y2 * stride + x] + integral[y * stride + x];
+    }
+
+    /**
+     * return tissue area in original image pixel
+     *
+     * @return
+     */
+    public double getTissueArea() {
+        return tissuePixels(0, 0, width, height) * scaleToOriginal * scaleToOriginal;
+    }
+
+    /**
+     * return grid spacing (original image pixel) for about count fields
+     *
+     * @param count
+     * @return
+     */
+    public double spacingFor(int count) {
+        return Math.sqrt(getTissueArea() / Math.max(1, count));
+    }
+
+    /**
+     * plan field centres
+     *
+     * @param spacing - grid spacing, original image pixel
+     * @param diameter - field diameter, original image pixel
+     * @param jitter - 0 (none) to 1 (anywhere within the grid cell)
+     * @param minTissueFraction - 0 to 1, of the square around the field
+     * @param random
+     * @return x0, y0, x1, y1 ... in original image coordinates
+     */
+    public int[] planCentres(double spacing, int diameter, double jitter, double minTissueFraction, Random random) {
+        if (!(spacing > 0)) {
+            throw new IllegalArgumentException("spacing must be > 0: " + spacing);
+        }
+        double originalWidth = width * scaleToOriginal;
+        double originalHeight = height * scaleToOriginal;
+        double half = Math.abs(diameter) / 2.0;
+        double offsetX = random.nextDouble() * spacing;
+        double offsetY = random.nextDouble() * spacing;
+        int[] result = new int[64];
+        int size = 0;
+        long rows = (long) Math.ceil((originalHeight - offsetY) / spacing);
+        long cols = (long) Math.ceil((originalWidth - offsetX) / spacing);
+        for (long row = 0; row < rows; row++) {
+            for (long col = 0; col < cols; col++) {
+                double x = offsetX + col * spacing + (random.nextDouble() - 0.5) * jitter * spacing;
+                double y = offsetY + row * spacing + (random.nextDouble() - 0.5) * jitter * spacing;
+                // square around the field in mask coordinates
+                int maskX = (int) Math.floor((x - half) / scaleToOriginal);
+                int maskY = (int) Math.floor((y - half) / scaleToOriginal);
+                int maskX2 = (int) Math.ceil((x + half) / scaleToOriginal);
+                int maskY2 = (int) Math.ceil((y + half) / scaleToOriginal);
+                long area = (long) Math.max(1, maskX2 - maskX) * Math.max(1, maskY2 - maskY);
+                if (tissuePixels(maskX, maskY, Math.max(maskX + 1, maskX2), Math.max(maskY + 1, maskY2)) < minTissueFraction * area) {
+                    continue;
+                }
+                if (size + 2 > result.length) {
+                    result = Arrays.copyOf(result, result.length * 2);
+                }
+                result[size++] = (int) Math.round(x);
+                result[size++] = (int) Math.round(y);
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * plan fields, see planCentres()
+     *
+     * @param spacing - grid spacing, original image pixel
+     * @param diameter - field diameter, original image pixel
+     * @param jitter - 0 (none) to 1 (anywhere within the grid cell)
+     * @param minTissueFraction - 0 to 1, of the square around the field
+     * @param random
+     * @return fields not scored yet, Ki67State NEGLIGIBLE
+     */
+    public ArrayList<FieldOfView> planFields(double spacing, int diameter, double jitter, double minTissueFraction, Random random) {
+        int[] centres = planCentres(spacing, diameter, jitter, minTissueFraction, random);
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(centres.length / 2);
+        for (int i = 0; i < centres.length; i += 2) {
+            result.add(new FieldOfView(centres[i], centres[i + 1], diameter,
+                    ViewingState.NOT_CURRENT, ScoringState.NOT_SCORED, Ki67State.NEGLIGIBLE));
+        }
+        return result;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getScaleToOriginal() {
+        return scaleToOriginal;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+}
@@ -0,0 +1,71 @@
+/*
+ * CharSequence over the bytes of a ByteBuffer (e.g. a memory mapped file),
+ * one byte per char (ISO-8859-1) i.e. no decoding and no copying
+ *
+ * param strings are plain ASCII, so FieldSelectionParamStringScanner can scan
+ * them straight off the buffer.  only toString() copies.
+ */
+package ca.ubc.gpec.ia.fieldselector.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class ByteBufferCharSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * constructor
+     *
+     * NOTE: uses absolute get i.e. the position/limit of buffer are ignored
+     * and not changed
+     *
+     * @param buffer
+     * @param offset - index in buffer of the first char
+     * @param length
+     */
+    public ByteBufferCharSequence(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", capacity " + buffer.capacity());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteBufferCharSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
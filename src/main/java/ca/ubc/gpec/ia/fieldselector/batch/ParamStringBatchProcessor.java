@@ -0,0 +1,351 @@
+/*
+ * batch processing of archived param strings e.g. for re-analysis
+ *
+ * input: text file, one line per slide per scorer:
+ * [slide id][TAB or ,][other columns e.g. scorer, ignored][TAB or ,][param string]
+ * i.e. the first column is the slide id and the last column is the param
+ * string.  blank lines are skipped.
+ *
+ * output: one CSV row per slide (see SlideStatistics.CSV_HEADER), in input
+ * order, written as soon as it is done.  consecutive lines with the same slide
+ * id are added up i.e. the input should be grouped by slide (otherwise a slide
+ * gets several rows).  malformed lines are reported (byte offset of the line
+ * within the file, column, text) and counted, but do not stop the job.
+ *
+ * the file is memory mapped in chunks split at line boundaries, the chunks are
+ * parsed in parallel on a ForkJoinPool and the lines are scanned straight off
+ * the mapped bytes (see ByteBufferCharSequence) i.e. nothing is copied per
+ * line.  only a few chunks are in flight at any time, so memory use does not
+ * depend on the size of the file.
+ *
+ * usage: java -cp fieldSelector.jar ca.ubc.gpec.ia.fieldselector.batch.ParamStringBatchProcessor input.txt output.csv [errors.txt]
+ */
+package ca.ubc.gpec.ia.fieldselector.batch;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParamStringScanner;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *
+ * @author samuelc
+ */
+public class ParamStringBatchProcessor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024; // bytes
+    public static final int MAX_REPORTED_CHARS = 200; // of a malformed line
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+    private final int parallelism;
+    private final int chunkSize;
+    private long lineCount;
+    private long malformedLineCount;
+    private long slideCount;
+
+    /**
+     * parsed lines of one chunk of the file
+     */
+    private static final class Chunk {
+
+        private final ArrayList<SlideStatistics> slides = new ArrayList<SlideStatistics>();
+        private final ArrayList<String> errors = new ArrayList<String>();
+        private long lines;
+        private long malformedLines;
+    }
+
+    /**
+     * parse [start, end) of the file ... start is at the beginning of a line,
+     * end is at the beginning of a line or the end of the file
+     */
+    private static final class ChunkTask extends RecursiveTask<Chunk> {
+
+        private static final long serialVersionUID = 1L;
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            try {
+                return parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param parallelism - number of threads
+     * @param chunkSize - bytes per chunk, about
+     */
+    public ParamStringBatchProcessor(int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be > 0: " + parallelism + ", " + chunkSize);
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * constructor ... one thread per core
+     */
+    public ParamStringBatchProcessor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * process input
+     *
+     * @param input
+     * @param csv - per slide statistics are written to it, with header
+     * @param errors - malformed lines are reported to it, one per line
+     * @throws IOException
+     */
+    public void process(Path input, Appendable csv, Appendable errors) throws IOException {
+        lineCount = 0;
+        malformedLineCount = 0;
+        slideCount = 0;
+        csv.append(SlideStatistics.CSV_HEADER).append('\n');
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ArrayDeque<ChunkTask> inFlight = new ArrayDeque<ChunkTask>();
+            SlideStatistics last = null; // not written yet ... may continue in the next chunk
+            long start = 0;
+            while (start < size || !inFlight.isEmpty()) {
+                // keep the pool busy
+                while (start < size && inFlight.size() < parallelism * IN_FLIGHT_PER_THREAD) {
+                    long end = nextLineStart(channel, Math.min(size, start + chunkSize), size);
+                    if (end - start > Integer.MAX_VALUE) {
+                        throw new IOException("line too long at byte offset " + start);
+                    }
+                    ChunkTask task = new ChunkTask(channel, start, end);
+                    pool.execute(task);
+                    inFlight.add(task);
+                    start = end;
+                }
+                // write the oldest chunk, in order
+                Chunk chunk;
+                try {
+                    chunk = inFlight.poll().join();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                lineCount += chunk.lines;
+                malformedLineCount += chunk.malformedLines;
+                for (String error : chunk.errors) {
+                    errors.append(error).append('\n');
+                }
+                for (SlideStatistics slide : chunk.slides) {
+                    if (last != null && last.getSlideId().equals(slide.getSlideId())) {
+                        last.add(slide);
+                        continue;
+                    }
+                    if (last != null) {
+                        last.writeCsv(csv);
+                        slideCount++;
+                    }
+                    last = slide;
+                }
+            }
+            if (last != null) {
+                last.writeCsv(csv);
+                slideCount++;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * return number of non-blank lines of the last process()
+     *
+     * @return
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * return number of malformed lines of the last process()
+     *
+     * @return
+     */
+    public long getMalformedLineCount() {
+        return malformedLineCount;
+    }
+
+    /**
+     * return number of CSV rows written by the last process()
+     *
+     * @return
+     */
+    public long getSlideCount() {
+        return slideCount;
+    }
+
+    /**
+     * parse all lines of buffer
+     *
+     * @param buffer
+     * @param fileOffset - of buffer, for error reports
+     * @return
+     */
+    private static Chunk parse(ByteBuffer buffer, long fileOffset) {
+        Chunk chunk = new Chunk();
+        int length = buffer.capacity();
+        ByteBufferCharSequence text = new ByteBufferCharSequence(buffer, 0, length);
+        SlideStatistics line = new SlideStatistics("");
+        SlideStatistics slide = null;
+        int slideBegin = 0;
+        int slideEnd = 0;
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int linePos = pos;
+            int end = lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            pos = lineEnd + 1;
+            if (FieldSelectionParamStringScanner.trimBegin(text, linePos, end) == end) {
+                continue; // blank line
+            }
+            int begin = linePos;
+            chunk.lines++;
+            int idEnd = begin;
+            while (idEnd < end && !isSeparator(buffer.get(idEnd))) {
+                idEnd++;
+            }
+            if (idEnd == end) {
+                chunk.malformedLines++;
+                chunk.errors.add(error(text, fileOffset, linePos, begin, end, "no slide id"));
+                continue;
+            }
+            int paramBegin = end;
+            while (!isSeparator(buffer.get(paramBegin - 1))) {
+                paramBegin--;
+            }
+            int idBegin = FieldSelectionParamStringScanner.trimBegin(text, begin, idEnd);
+            idEnd = FieldSelectionParamStringScanner.trimEnd(text, idBegin, idEnd);
+            if (slide == null || !sameBytes(buffer, slideBegin, slideEnd, idBegin, idEnd)) {
+                // only String per slide, not per line
+                slide = new SlideStatistics(text.subSequence(idBegin, idEnd).toString());
+                chunk.slides.add(slide);
+                slideBegin = idBegin;
+                slideEnd = idEnd;
+            }
+            line.clear();
+            int paramEnd = FieldSelectionParamStringScanner.trimEnd(text, paramBegin, end);
+            paramBegin = FieldSelectionParamStringScanner.trimBegin(text, paramBegin, paramEnd);
+            int error = FieldSelectionParamStringScanner.scan(text, paramBegin, paramEnd, line);
+            if (error == FieldSelectionParamStringScanner.NO_ERROR) {
+                slide.addLine(line);
+            } else {
+                slide.addMalformedLine();
+                chunk.malformedLines++;
+                chunk.errors.add(error(text, fileOffset, linePos, error, end, "malformed param string"));
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * [byte offset of line]:[column]: [message]: [line, at most MAX_REPORTED_CHARS]
+     */
+    private static String error(ByteBufferCharSequence text, long fileOffset, int linePos, int errorPos, int lineEnd, String message) {
+        int end = Math.min(lineEnd, linePos + MAX_REPORTED_CHARS);
+        return (fileOffset + linePos) + ":" + (errorPos - linePos) + ": " + message + ": "
+                + text.subSequence(linePos, end) + (end < lineEnd ? "..." : "");
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == '\t' || b == ',';
+    }
+
+    private static boolean sameBytes(ByteBuffer buffer, int begin1, int end1, int begin2, int end2) {
+        if (end1 - begin1 != end2 - begin2) {
+            return false;
+        }
+        for (int i = 0; i < end1 - begin1; i++) {
+            if (buffer.get(begin1 + i) != buffer.get(begin2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * return offset of the first line starting at or after pos, size if none
+     */
+    private static long nextLineStart(FileChannel channel, long pos, long size) throws IOException {
+        if (pos == 0 || pos >= size) {
+            return Math.min(pos, size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long readPos = pos - 1; // line starts at pos if pos - 1 is a newline
+        while (readPos < size) {
+            buffer.clear();
+            int n = channel.read(buffer, readPos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return readPos + i + 1;
+                }
+            }
+            readPos += n;
+        }
+        return size;
+    }
+
+    /**
+     * command line entry point
+     *
+     * @param args - input file, output CSV file, optional errors file
+     * (default: stderr)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: ParamStringBatchProcessor input.txt output.csv [errors.txt]");
+            System.exit(1);
+        }
+        ParamStringBatchProcessor processor = new ParamStringBatchProcessor();
+        long startTime = System.nanoTime();
+        try (Writer csv = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            if (args.length > 2) {
+                try (Writer errors = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                    processor.process(Paths.get(args[0]), csv, errors);
+                }
+            } else {
+                processor.process(Paths.get(args[0]), csv, System.err);
+            }
+        }
+        System.err.println(processor.getLineCount() + " lines, "
+                + processor.getSlideCount() + " slides, "
+                + processor.getMalformedLineCount() + " malformed lines, "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * statistics of the field selections of one slide i.e. of all its param
+ * strings (one per scorer)
+ */
+package ca.ubc.gpec.ia.fieldselector.batch;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParamStringScanner;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ *
+ * @author samuelc
+ */
+public class SlideStatistics implements FieldSelectionParamStringScanner.FieldHandler {
+
+    public static final String CSV_HEADER = "slide_id,lines,malformed_lines,fields,"
+            + "negligible,low,medium,high,hot_spot,scored,scoring,not_scored,scored_ratio,total_area";
+    private final String slideId;
+    private long lines;
+    private long malformedLines;
+    private final long[] ki67Counts = new long[Ki67State.values().length];
+    private final long[] scoringCounts = new long[ScoringState.values().length];
+    private double totalArea; // in original image pixel
+
+    /**
+     * constructor
+     *
+     * @param slideId
+     */
+    public SlideStatistics(String slideId) {
+        this.slideId = slideId;
+    }
+
+    /**
+     * count a field
+     */
+    @Override
+    public void field(int x, int y, int diameter, ViewingState viewingState, ScoringState scoringState, Ki67State ki67State) {
+        ki67Counts[ki67State.ordinal()]++;
+        scoringCounts[scoringState.ordinal()]++;
+        double radius = diameter / 2.0;
+        totalArea += Math.PI * radius * radius;
+    }
+
+    /**
+     * add the fields and lines of other
+     *
+     * @param other
+     */
+    public void add(SlideStatistics other) {
+        lines += other.lines;
+        malformedLines += other.malformedLines;
+        for (int i = 0; i < ki67Counts.length; i++) {
+            ki67Counts[i] += other.ki67Counts[i];
+        }
+        for (int i = 0; i < scoringCounts.length; i++) {
+            scoringCounts[i] += other.scoringCounts[i];
+        }
+        totalArea += other.totalArea;
+    }
+
+    /**
+     * add the fields of other (i.e. one well formed param string) and count
+     * one line
+     *
+     * @param other
+     */
+    void addLine(SlideStatistics other) {
+        add(other);
+        lines++;
+    }
+
+    /**
+     * count one malformed line
+     */
+    void addMalformedLine() {
+        lines++;
+        malformedLines++;
+    }
+
+    /**
+     * reset all counts
+     */
+    void clear() {
+        lines = 0;
+        malformedLines = 0;
+        Arrays.fill(ki67Counts, 0);
+        Arrays.fill(scoringCounts, 0);
+        totalArea = 0;
+    }
+
+    /**
+     * write as one CSV row (see CSV_HEADER), including line separator
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeCsv(Appendable out) throws IOException {
+        out.append(csvQuote(slideId)).append(',')
+                .append(Long.toString(lines)).append(',')
+                .append(Long.toString(malformedLines)).append(',')
+                .append(Long.toString(getFieldCount()));
+        for (long count : ki67Counts) {
+            out.append(',').append(Long.toString(count));
+        }
+        out.append(',').append(Long.toString(getCount(ScoringState.SCORED)))
+                .append(',').append(Long.toString(getCount(ScoringState.SCORING)))
+                .append(',').append(Long.toString(getCount(ScoringState.NOT_SCORED)))
+                .append(',').append(Double.toString(getScoredRatio()))
+                .append(',').append(Long.toString(Math.round(totalArea)))
+                .append('\n');
+    }
+
+    /**
+     * return number of fields with ki67State
+     *
+     * @param ki67State
+     * @return
+     */
+    public long getCount(Ki67State ki67State) {
+        return ki67Counts[ki67State.ordinal()];
+    }
+
+    /**
+     * return number of fields with scoringState
+     *
+     * @param scoringState
+     * @return
+     */
+    public long getCount(ScoringState scoringState) {
+        return scoringCounts[scoringState.ordinal()];
+    }
+
+    /**
+     * return total number of fields
+     *
+     * @return
+     */
+    public long getFieldCount() {
+        long result = 0;
+        for (long count : scoringCounts) {
+            result += count;
+        }
+        return result;
+    }
+
+    /**
+     * return scored fields / all fields, 0 if no field
+     *
+     * @return
+     */
+    public double getScoredRatio() {
+        long fieldCount = getFieldCount();
+        return fieldCount == 0 ? 0 : (double) getCount(ScoringState.SCORED) / fieldCount;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public String getSlideId() {
+        return slideId;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    public double getTotalArea() {
+        return totalArea;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    private static String csvQuote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * a count that can be increased from many threads at once
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class Counter {
+
+    private final String name;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void reset() {
+        value.reset();
+    }
+}
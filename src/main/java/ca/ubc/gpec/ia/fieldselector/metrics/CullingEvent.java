@@ -0,0 +1,28 @@
+/*
+ * JFR event: fields in view looked up for a frame
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * @author samuelc
+ */
+@Name("ca.ubc.gpec.ia.fieldselector.Culling")
+@Label("Culling")
+@Category("Field Selector")
+@Description("fields in view of a ViewWindow")
+public final class CullingEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    String source;
+    @Label("Field Count")
+    int fieldCount;
+    @Label("Visible Count")
+    int visibleCount;
+    transient long start; // for Metrics
+}
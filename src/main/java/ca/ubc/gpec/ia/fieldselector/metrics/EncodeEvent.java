@@ -0,0 +1,26 @@
+/*
+ * JFR event: param string generated (see FieldSelectionParamStringEncoder)
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * @author samuelc
+ */
+@Name("ca.ubc.gpec.ia.fieldselector.Encode")
+@Label("Encode Param String")
+@Category("Field Selector")
+@Description("generateFieldSelectionParamString")
+public final class EncodeEvent extends jdk.jfr.Event {
+
+    @Label("Field Count")
+    int fieldCount;
+    @Label("String Length")
+    int stringLength;
+    transient long start; // for Metrics
+}
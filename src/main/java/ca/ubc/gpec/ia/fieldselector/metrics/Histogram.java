@@ -0,0 +1,114 @@
+/*
+ * distribution of values (e.g. durations in nanoseconds) in power of 2
+ * buckets i.e. recording is a few additions, no allocation, no locking
+ *
+ * bucket i holds values within [2^(i-1), 2^i), bucket 0 holds 0 (and negative
+ * values)
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class Histogram {
+
+    public static final int BUCKETS = 64;
+    private final String name;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    Histogram(String name) {
+        this.name = name;
+        buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * record a value
+     *
+     * @param value
+     */
+    public void record(long value) {
+        buckets[value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * return biggest value, 0 if none
+     *
+     * @return
+     */
+    public long getMax() {
+        return getCount() == 0 ? 0 : max.get();
+    }
+
+    /**
+     * return number of values in bucket
+     *
+     * @param bucket
+     * @return
+     */
+    public long getBucketCount(int bucket) {
+        return buckets[bucket].sum();
+    }
+
+    /**
+     * return upper bound (exclusive) of bucket
+     *
+     * @param bucket
+     * @return
+     */
+    public static long bucketLimit(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * return approximate percentile i.e. upper bound of the bucket it falls in
+     *
+     * @param percentile - 0 to 100
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        long wanted = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= wanted && seen > 0) {
+                return Math.min(bucketLimit(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * registry of counters and histograms
+ *
+ * off by default; switch on with -Dfieldselector.metrics=true or
+ * setEnabled(true).  when off, the probes (see Probes) only read one boolean.
+ *
+ * dump() writes everything as plain text, one line per metric, e.g.
+ * # fieldSelector metrics 2026-10-17T10:15:30Z
+ * counter parse.fields 123456
+ * histogram parse.nanos count=100 sum=1234567 max=99999 p50=8192 p90=16384 p99=65536 buckets=13:40,14:50,17:10
+ *
+ * (buckets=[i]:[n] means n values within [2^(i-1), 2^i), see Histogram)
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class Metrics {
+
+    public static final String PROPERTY_ENABLED = "fieldselector.metrics";
+    private static volatile boolean enabled = Boolean.getBoolean(PROPERTY_ENABLED);
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * return counter, created if needed
+     *
+     * @param name
+     * @return
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * return histogram, created if needed
+     *
+     * @param name
+     * @return
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+
+    /**
+     * set all counters and histograms to 0
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * write all metrics, sorted by name
+     *
+     * @param out
+     * @throws IOException
+     */
+    public static void dump(Appendable out) throws IOException {
+        out.append("# fieldSelector metrics ").append(Instant.now().toString()).append('\n');
+        for (Counter counter : new TreeMap<String, Counter>(counters).values()) {
+            out.append("counter ").append(counter.getName()).append(' ').append(Long.toString(counter.get())).append('\n');
+        }
+        for (Histogram histogram : new TreeMap<String, Histogram>(histograms).values()) {
+            out.append("histogram ").append(histogram.getName())
+                    .append(" count=").append(Long.toString(histogram.getCount()))
+                    .append(" sum=").append(Long.toString(histogram.getSum()))
+                    .append(" max=").append(Long.toString(histogram.getMax()))
+                    .append(" p50=").append(Long.toString(histogram.getPercentile(50)))
+                    .append(" p90=").append(Long.toString(histogram.getPercentile(90)))
+                    .append(" p99=").append(Long.toString(histogram.getPercentile(99)))
+                    .append(" buckets=");
+            boolean first = true;
+            for (int i = 0; i < Histogram.BUCKETS; i++) {
+                long n = histogram.getBucketCount(i);
+                if (n > 0) {
+                    out.append(first ? "" : ",").append(Integer.toString(i)).append(':').append(Long.toString(n));
+                    first = false;
+                }
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * write all metrics to file (replaced if exists)
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void dump(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            dump(out);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * JFR event: param string parsed (see FieldSelectionParamStringParser)
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * @author samuelc
+ */
+@Name("ca.ubc.gpec.ia.fieldselector.Parse")
+@Label("Parse Param String")
+@Category("Field Selector")
+@Description("FieldSelectionParamStringParser constructor")
+public final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("String Length")
+    int stringLength;
+    @Label("Field Count")
+    int fieldCount;
+    @Label("Failed")
+    boolean failed;
+    transient long start; // for Metrics
+}
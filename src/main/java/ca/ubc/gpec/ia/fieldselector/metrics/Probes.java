@@ -0,0 +1,233 @@
+/*
+ * instrumentation points of the hot paths i.e. parsing, encoding, zooming,
+ * panning and per frame culling
+ *
+ * each probe emits a JFR event (see ParseEvent, EncodeEvent, ViewportEvent,
+ * CullingEvent ... recorded with e.g. -XX:StartFlightRecording) and, if
+ * Metrics is enabled, updates its counters/histograms.  with both off, a probe
+ * is an allocation that escape analysis removes, a JFR enabled check and one
+ * volatile read.
+ *
+ * metrics:
+ * parse.calls/errors/chars/fields, histogram parse.nanos
+ * encode.calls/chars/fields, histogram encode.nanos
+ * histograms viewport.zoom.nanos, viewport.move.nanos
+ * cull.[source].calls/fields, histograms cull.[source].visible,
+ * cull.[source].nanos
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class Probes {
+
+    public static final String SOURCE_GRID_INDEX = "gridIndex";
+    public static final String SOURCE_STORE = "store";
+    public static final String SOURCE_RENDERER = "renderer";
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final Counter parseCalls = Metrics.counter("parse.calls");
+    private static final Counter parseErrors = Metrics.counter("parse.errors");
+    private static final Counter parseChars = Metrics.counter("parse.chars");
+    private static final Counter parseFields = Metrics.counter("parse.fields");
+    private static final Histogram parseNanos = Metrics.histogram("parse.nanos");
+    private static final Counter encodeCalls = Metrics.counter("encode.calls");
+    private static final Counter encodeChars = Metrics.counter("encode.chars");
+    private static final Counter encodeFields = Metrics.counter("encode.fields");
+    private static final Histogram encodeNanos = Metrics.histogram("encode.nanos");
+    private static final Histogram zoomNanos = Metrics.histogram("viewport.zoom.nanos");
+    private static final Histogram moveNanos = Metrics.histogram("viewport.move.nanos");
+    private static final CullingMetrics cullGridIndex = new CullingMetrics(SOURCE_GRID_INDEX);
+    private static final CullingMetrics cullStore = new CullingMetrics(SOURCE_STORE);
+    private static final CullingMetrics cullRenderer = new CullingMetrics(SOURCE_RENDERER);
+
+    private Probes() {
+    }
+
+    private static long start() {
+        return Metrics.isEnabled() ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * call before parsing
+     *
+     * @return
+     */
+    public static ParseEvent beginParse() {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        event.start = start();
+        return event;
+    }
+
+    /**
+     * call after parsing
+     *
+     * @param event - from beginParse()
+     * @param stringLength
+     * @param fieldCount
+     * @param failed - true if an exception was thrown
+     */
+    public static void endParse(ParseEvent event, int stringLength, int fieldCount, boolean failed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.stringLength = stringLength;
+            event.fieldCount = fieldCount;
+            event.failed = failed;
+            event.commit();
+        }
+        if (event.start != NOT_TIMED) {
+            parseNanos.record(System.nanoTime() - event.start);
+            parseCalls.increment();
+            parseChars.add(stringLength);
+            parseFields.add(fieldCount);
+            if (failed) {
+                parseErrors.increment();
+            }
+        }
+    }
+
+    /**
+     * call before encoding
+     *
+     * @return
+     */
+    public static EncodeEvent beginEncode() {
+        EncodeEvent event = new EncodeEvent();
+        event.begin();
+        event.start = start();
+        return event;
+    }
+
+    /**
+     * call after encoding
+     *
+     * @param event - from beginEncode()
+     * @param fieldCount
+     * @param stringLength
+     */
+    public static void endEncode(EncodeEvent event, int fieldCount, int stringLength) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.fieldCount = fieldCount;
+            event.stringLength = stringLength;
+            event.commit();
+        }
+        if (event.start != NOT_TIMED) {
+            encodeNanos.record(System.nanoTime() - event.start);
+            encodeCalls.increment();
+            encodeChars.add(stringLength);
+            encodeFields.add(fieldCount);
+        }
+    }
+
+    /**
+     * call before zooming/moving
+     *
+     * @return
+     */
+    public static ViewportEvent beginViewport() {
+        ViewportEvent event = new ViewportEvent();
+        event.begin();
+        event.start = start();
+        return event;
+    }
+
+    /**
+     * call after zooming/moving
+     *
+     * @param event - from beginViewport()
+     * @param operation - ViewportEvent.ZOOM or ViewportEvent.MOVE
+     * @param magnification - after
+     * @param x - after
+     * @param y - after
+     */
+    public static void endViewport(ViewportEvent event, String operation, float magnification, int x, int y) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.magnification = magnification;
+            event.x = x;
+            event.y = y;
+            event.commit();
+        }
+        if (event.start != NOT_TIMED) {
+            (ViewportEvent.ZOOM.equals(operation) ? zoomNanos : moveNanos).record(System.nanoTime() - event.start);
+        }
+    }
+
+    /**
+     * call before looking up fields in view
+     *
+     * @return
+     */
+    public static CullingEvent beginCulling() {
+        CullingEvent event = new CullingEvent();
+        event.begin();
+        event.start = start();
+        return event;
+    }
+
+    /**
+     * call after looking up fields in view
+     *
+     * @param event - from beginCulling()
+     * @param source - e.g. SOURCE_GRID_INDEX
+     * @param fieldCount - number of fields looked through
+     * @param visibleCount - number of fields in view
+     */
+    public static void endCulling(CullingEvent event, String source, int fieldCount, int visibleCount) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.fieldCount = fieldCount;
+            event.visibleCount = visibleCount;
+            event.commit();
+        }
+        if (event.start != NOT_TIMED) {
+            CullingMetrics metrics = cullingMetrics(source);
+            metrics.nanos.record(System.nanoTime() - event.start);
+            metrics.visible.record(visibleCount);
+            metrics.calls.increment();
+            metrics.fields.add(fieldCount);
+        }
+    }
+
+    /**
+     * return metrics of source ... looked up by name only if source is not
+     * one of the SOURCE_* constants
+     *
+     * @param source
+     * @return
+     */
+    private static CullingMetrics cullingMetrics(String source) {
+        if (SOURCE_GRID_INDEX.equals(source)) {
+            return cullGridIndex;
+        } else if (SOURCE_STORE.equals(source)) {
+            return cullStore;
+        } else if (SOURCE_RENDERER.equals(source)) {
+            return cullRenderer;
+        } else {
+            return new CullingMetrics(source);
+        }
+    }
+
+    /**
+     * counters/histograms cull.[source].*
+     */
+    private static final class CullingMetrics {
+
+        private final Counter calls;
+        private final Counter fields;
+        private final Histogram visible;
+        private final Histogram nanos;
+
+        private CullingMetrics(String source) {
+            calls = Metrics.counter("cull." + source + ".calls");
+            fields = Metrics.counter("cull." + source + ".fields");
+            visible = Metrics.histogram("cull." + source + ".visible");
+            nanos = Metrics.histogram("cull." + source + ".nanos");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * JFR event: view window zoomed or moved (see ViewWindow)
+ */
+package ca.ubc.gpec.ia.fieldselector.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *
+ * @author samuelc
+ */
+@Name("ca.ubc.gpec.ia.fieldselector.Viewport")
+@Label("Viewport Change")
+@Category("Field Selector")
+@Description("ViewWindow.changeMagnification/move")
+public final class ViewportEvent extends jdk.jfr.Event {
+
+    public static final String ZOOM = "zoom";
+    public static final String MOVE = "move";
+    @Label("Operation")
+    String operation;
+    @Label("Magnification")
+    float magnification;
+    @Label("X")
+    int x;
+    @Label("Y")
+    int y;
+    transient long start; // for Metrics
+}
@@ -0,0 +1,221 @@
+/*
+ * immutable mapping between two of the coordinate systems:
+ * 1. ORIGINAL image
+ * 2. PREVIEW/lowres image (x,y of ViewWindow)
+ * 3. VIEW i.e. pixel of the panel the view window is drawn on
+ * 4. THUMBNAIL i.e. pixel of the panel, inside the thumbnail window
+ *
+ * each axis is: to = from * scale + offset
+ *
+ * transforms can be composed (e.g. ORIGINAL->PREVIEW then PREVIEW->VIEW) and
+ * inverted.  the math is done in double without rounding in between.
+ *
+ * relation to the project*() methods of ViewWindow, which round after every
+ * step:
+ * - VIEW->PREVIEW is ViewWindow.projectRealX/Y(), may differ by one pixel
+ * - PREVIEW->VIEW is NOT ViewWindow.projectViewX/Y() ... those have no
+ *   viewableXOffset/viewableYOffset i.e. are relative to the viewable area;
+ *   VIEW = projectViewX/Y() + viewableX/YOffset, +/- one pixel
+ * - VIEW->ORIGINAL is ViewWindow.projectOriginalX/Y(), which round in
+ *   PREVIEW first i.e. may differ by up to scaleToOriginal / 2 + 1 pixel
+ * - PREVIEW->ORIGINAL of the view window corners is getOriginalX/Y/X2/Y2(),
+ *   may differ by one pixel
+ * - PREVIEW->THUMBNAIL is ThumbnailWindow.projectRealX/Y(), may differ by one
+ *   pixel
+ *
+ * get transforms from ViewWindow.getTransform() or
+ * ThumbnailWindow.getTransform(), they are recomputed whenever the view window
+ * changes.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class CoordinateTransform {
+
+    /**
+     * coordinate systems
+     */
+    public enum Space {
+        ORIGINAL, PREVIEW, VIEW, THUMBNAIL
+    }
+    private final Space from;
+    private final Space to;
+    private final double scaleX;
+    private final double offsetX;
+    private final double scaleY;
+    private final double offsetY;
+
+    /**
+     * constructor
+     *
+     * @param from
+     * @param to
+     * @param scaleX - must not be 0
+     * @param offsetX
+     * @param scaleY - must not be 0
+     * @param offsetY
+     */
+    public CoordinateTransform(Space from, Space to, double scaleX, double offsetX, double scaleY, double offsetY) {
+        if (scaleX == 0 || scaleY == 0) {
+            throw new IllegalArgumentException("scale must not be 0: " + scaleX + "/" + scaleY);
+        }
+        this.from = from;
+        this.to = to;
+        this.scaleX = scaleX;
+        this.offsetX = offsetX;
+        this.scaleY = scaleY;
+        this.offsetY = offsetY;
+    }
+
+    /**
+     * return transform that does not change anything
+     *
+     * @param space
+     * @return
+     */
+    public static CoordinateTransform identity(Space space) {
+        return new CoordinateTransform(space, space, 1, 0, 1, 0);
+    }
+
+    /**
+     * return transform that does this, then next
+     *
+     * @param next - must start where this one ends
+     * @return
+     */
+    public CoordinateTransform compose(CoordinateTransform next) {
+        if (next.from != to) {
+            throw new IllegalArgumentException("cannot compose " + from + "->" + to + " with " + next.from + "->" + next.to);
+        }
+        return new CoordinateTransform(from, next.to,
+                scaleX * next.scaleX, offsetX * next.scaleX + next.offsetX,
+                scaleY * next.scaleY, offsetY * next.scaleY + next.offsetY);
+    }
+
+    /**
+     * return transform that goes the other way
+     *
+     * @return
+     */
+    public CoordinateTransform inverse() {
+        return new CoordinateTransform(to, from,
+                1 / scaleX, -offsetX / scaleX,
+                1 / scaleY, -offsetY / scaleY);
+    }
+
+    /**
+     * transform x coordinate
+     *
+     * @param x
+     * @return
+     */
+    public double transformX(double x) {
+        return x * scaleX + offsetX;
+    }
+
+    /**
+     * transform y coordinate
+     *
+     * @param y
+     * @return
+     */
+    public double transformY(double y) {
+        return y * scaleY + offsetY;
+    }
+
+    /**
+     * transform x coordinate, rounded to the nearest pixel
+     *
+     * @param x
+     * @return
+     */
+    public int roundX(int x) {
+        return (int) Math.round(x * scaleX + offsetX);
+    }
+
+    /**
+     * transform y coordinate, rounded to the nearest pixel
+     *
+     * @param y
+     * @return
+     */
+    public int roundY(int y) {
+        return (int) Math.round(y * scaleY + offsetY);
+    }
+
+    /**
+     * transform a length in x direction e.g. a diameter
+     *
+     * @param length
+     * @return
+     */
+    public double scaleLength(double length) {
+        return length * Math.abs(scaleX);
+    }
+
+    /**
+     * transform x coordinates, rounded to the nearest pixel
+     *
+     * @param x
+     * @param result - may be the same array as x
+     * @param length - number of coordinates to transform
+     */
+    public void roundX(int[] x, int[] result, int length) {
+        final double scale = scaleX;
+        final double offset = offsetX;
+        for (int i = 0; i < length; i++) {
+            result[i] = (int) Math.round(x[i] * scale + offset);
+        }
+    }
+
+    /**
+     * transform y coordinates, rounded to the nearest pixel
+     *
+     * @param y
+     * @param result - may be the same array as y
+     * @param length - number of coordinates to transform
+     */
+    public void roundY(int[] y, int[] result, int length) {
+        final double scale = scaleY;
+        final double offset = offsetY;
+        for (int i = 0; i < length; i++) {
+            result[i] = (int) Math.round(y[i] * scale + offset);
+        }
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public Space getFrom() {
+        return from;
+    }
+
+    public Space getTo() {
+        return to;
+    }
+
+    public double getScaleX() {
+        return scaleX;
+    }
+
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    public double getScaleY() {
+        return scaleY;
+    }
+
+    public double getOffsetY() {
+        return offsetY;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return from + "->" + to + " x*" + scaleX + "+" + offsetX + " y*" + scaleY + "+" + offsetY;
+    }
+}
@@ -3,6 +3,8 @@
  */
 package ca.ubc.gpec.ia.fieldselector.model;
 
+import java.util.Arrays;
+
 /**
  *
  * @author samuelc
@@ -37,6 +39,7 @@ public class FieldOfView {
     private ScoringState scoringState; // indicate if this has not been scored, scoring or scored
     private ViewingState viewingState; // indicate if this is the current scoring field of view
     private Ki67State ki67State; // indicate the Ki67 state of this field of view
+    private FieldOfViewListener[] listeners; // null if nobody is listening ... copied on add/remove
 
     /**
      * constructor
@@ -57,6 +60,13 @@ public class FieldOfView {
         this.ki67State = ki67State;
     }
 
+    /**
+     * constructor for subclasses that keep x, y, diameter and states
+     * elsewhere i.e. override the getters, writeGeometry() and writeStates()
+     */
+    protected FieldOfView() {
+    }
+
     /**
      * PROBLEM!!! currently assume to compare via x,y,diameter, scoringState ...
      * it MAY BE logical for two fields of view to be pointing to the same
@@ -79,10 +89,27 @@ public class FieldOfView {
             return false;
         }
         FieldOfView f = (FieldOfView) obj;
-        return (x == f.getX()
-                && y == f.getY()
-                && diameter == f.getDiamter()
-                && scoringState == f.scoringState);
+        return (getX() == f.getX()
+                && getY() == f.getY()
+                && getDiamter() == f.getDiamter()
+                && getScoringState() == f.getScoringState());
+    }
+
+    /**
+     * consistent with equals() i.e. uses x,y,diameter, scoringState
+     *
+     * NOTE: these can change ... do not change a field while it is in a hash
+     * based collection
+     *
+     * @return
+     */
+    @Override
+    public int hashCode() {
+        int hash = getX();
+        hash = 31 * hash + getY();
+        hash = 31 * hash + getDiamter();
+        hash = 31 * hash + (getScoringState() == null ? 0 : getScoringState().ordinal() + 1);
+        return hash;
     }
 
     ///////////////////////////////////////////////
@@ -132,7 +159,7 @@ public class FieldOfView {
      * @return
      */
     public boolean isCurrentViewing() {
-        return viewingState == ViewingState.CURRENT;
+        return getViewingState() == ViewingState.CURRENT;
     }
 
     /**
@@ -141,7 +168,7 @@ public class FieldOfView {
      * @return
      */
     public boolean isPreviewing() {
-        return viewingState == ViewingState.PREVIEW;
+        return getViewingState() == ViewingState.PREVIEW;
     }
 
     /**
@@ -150,37 +177,145 @@ public class FieldOfView {
      * @return
      */
     public boolean isScored() {
-        return scoringState == ScoringState.SCORED;
+        return getScoringState() == ScoringState.SCORED;
     }
 
     public void setX(int x) {
-        this.x = x;
+        setGeometry(x, getY(), getDiamter());
     }
 
     public void setY(int y) {
-        this.y = y;
+        setGeometry(getX(), y, getDiamter());
     }
 
     public void setDiameter(int diameter) {
-        this.diameter = diameter;
+        setGeometry(getX(), getY(), diameter);
     }
 
     public void setScoringState(ScoringState scoringState) {
-        this.scoringState = scoringState;
+        setStates(getViewingState(), scoringState);
     }
 
     public void setViewingState(ViewingState viewingState) {
-        this.viewingState = viewingState;
+        setStates(viewingState, getScoringState());
     }
     /// end of getters & setters                ///
     ///////////////////////////////////////////////
 
+    /**
+     * set x, y and diameter at once ... listeners are notified once
+     *
+     * @param x
+     * @param y
+     * @param diameter
+     */
+    public void setGeometry(int x, int y, int diameter) {
+        int oldX = getX();
+        int oldY = getY();
+        int oldDiameter = getDiamter();
+        if (oldX == x && oldY == y && oldDiameter == diameter) {
+            return; // nothing changed
+        }
+        writeGeometry(x, y, diameter);
+        FieldOfViewListener[] currentListeners = listeners;
+        if (currentListeners != null) {
+            for (FieldOfViewListener listener : currentListeners) {
+                listener.geometryChanged(this, oldX, oldY, oldDiameter);
+            }
+        }
+    }
+
+    /**
+     * set viewing state and scoring state at once ... listeners are notified
+     * once
+     *
+     * @param viewingState
+     * @param scoringState
+     */
+    public void setStates(ViewingState viewingState, ScoringState scoringState) {
+        ViewingState oldViewingState = getViewingState();
+        ScoringState oldScoringState = getScoringState();
+        if (oldViewingState == viewingState && oldScoringState == scoringState) {
+            return; // nothing changed
+        }
+        writeStates(viewingState, scoringState);
+        FieldOfViewListener[] currentListeners = listeners;
+        if (currentListeners != null) {
+            for (FieldOfViewListener listener : currentListeners) {
+                listener.stateChanged(this, oldViewingState, oldScoringState);
+            }
+        }
+    }
+
+    /**
+     * store x, y and diameter ... does not notify listeners
+     *
+     * @param x
+     * @param y
+     * @param diameter
+     */
+    protected void writeGeometry(int x, int y, int diameter) {
+        this.x = x;
+        this.y = y;
+        this.diameter = diameter;
+    }
+
+    /**
+     * store viewing state and scoring state ... does not notify listeners
+     *
+     * @param viewingState
+     * @param scoringState
+     */
+    protected void writeStates(ViewingState viewingState, ScoringState scoringState) {
+        this.viewingState = viewingState;
+        this.scoringState = scoringState;
+    }
+
+    /**
+     * add listener to be notified of changes to this field
+     *
+     * @param listener
+     */
+    public void addListener(FieldOfViewListener listener) {
+        if (listeners == null) {
+            listeners = new FieldOfViewListener[]{listener};
+        } else {
+            FieldOfViewListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            newListeners[listeners.length] = listener;
+            listeners = newListeners;
+        }
+    }
+
+    /**
+     * remove listener previously added by addListener()
+     *
+     * @param listener
+     */
+    public void removeListener(FieldOfViewListener listener) {
+        if (listeners == null) {
+            return;
+        }
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                if (listeners.length == 1) {
+                    listeners = null;
+                } else {
+                    FieldOfViewListener[] newListeners = new FieldOfViewListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, i);
+                    System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                    listeners = newListeners;
+                }
+                return;
+            }
+        }
+    }
+
     /**
      * check to see if this field is a hotspot
      * @return 
      */
     public boolean isHotspot() {
-        return ki67State == Ki67State.HOT_SPOT;
+        return getKi67State() == Ki67State.HOT_SPOT;
     }
     
     /**
@@ -191,12 +326,31 @@ public class FieldOfView {
      * @return
      */
     public boolean inView(int inputX, int inputY) {
+        int x = getX();
+        int y = getY();
+        int diameter = getDiamter();
         return (inputX <= (x + diameter / 2)
                 && inputX >= (x - diameter / 2)
                 && inputY <= (y + diameter / 2)
                 && inputY >= (y - diameter / 2));
     }
 
+    /**
+     * check to see if the specified x/y is within the (circular) field of view
+     *
+     * unlike inView(int, int), which checks the bounding square, points near
+     * the corners of the bounding square are NOT in the circle
+     *
+     * @param inputX
+     * @param inputY
+     * @return
+     */
+    public boolean inCircle(int inputX, int inputY) {
+        long dX = (long) inputX - getX();
+        long dY = (long) inputY - getY();
+        return 4 * (dX * dX + dY * dY) <= (long) getDiamter() * getDiamter(); // i.e. distance <= diameter/2
+    }
+
     /**
      * determine if this nuclei is in view i.e. do I need to draw it
      *
@@ -208,6 +362,9 @@ public class FieldOfView {
      * @return
      */
     public boolean inView(ViewWindow viewWindow) {
+        int x = getX();
+        int y = getY();
+        int diameter = getDiamter();
         //System.out.println("x/y: "+x+"/"+y+" viewport ... x/x2: "+viewWindow.getOriginalX()+"/"+viewWindow.getOriginalX2()+"; y/y2: "+viewWindow.getOriginalY()+"/"+viewWindow.getOriginalY2());
         return (viewWindow.getOriginalX() <= (x + diameter / 2)
                 && viewWindow.getOriginalX2() >= (x - diameter / 2)
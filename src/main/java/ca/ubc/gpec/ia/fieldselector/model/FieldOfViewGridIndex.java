@@ -0,0 +1,364 @@
+/*
+ * uniform grid over the fields of view, in coordinate system of ORIGINAL image
+ *
+ * each field is registered in every grid cell its bounding square touches so
+ * that "which fields do I need to draw for this ViewWindow" only looks at the
+ * cells covered by the view window instead of every field.  the index listens
+ * to the fields it contains and moves them when x/y/diameter change ... call
+ * clear() when done with it, otherwise the fields keep it reachable.
+ *
+ * returns exactly the same fields as calling FieldOfView.inView(ViewWindow) on
+ * every field, but NOT necessarily in the same order.
+ *
+ * also used for mouse picking: topmostAt() finds the field under a point
+ * using the exact circle test (FieldOfView.inCircle()) by looking at a single
+ * cell.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.metrics.CullingEvent;
+import ca.ubc.gpec.ia.fieldselector.metrics.Probes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldOfViewGridIndex implements FieldOfViewListener {
+
+    public static final int DEFAULT_CELL_SIZE = 4096; // in pixel of original image ... about the usual field diameter
+    private static final long MAX_CELLS_PER_FIELD = 64; // bigger fields are kept in oversized instead
+    private final int cellSize;
+    private final HashMap<Long, ArrayList<Entry>> cells; // key: see cellKey()
+    private final ArrayList<Entry> oversized; // fields covering too many cells ... checked on every query
+    private final IdentityHashMap<FieldOfView, Entry> entries;
+    private long addCount; // used to order entries ... later added fields are drawn on top
+
+    /**
+     * a field together with the range of cells it is registered in
+     */
+    private static class Entry {
+
+        final FieldOfView field;
+        final long order; // higher is on top
+        int minCol;
+        int maxCol;
+        int minRow;
+        int maxRow;
+        boolean oversized;
+
+        Entry(FieldOfView field, long order) {
+            this.field = field;
+            this.order = order;
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param cellSize - in pixel of original image
+     */
+    public FieldOfViewGridIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be > 0: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        cells = new HashMap<Long, ArrayList<Entry>>();
+        oversized = new ArrayList<Entry>();
+        entries = new IdentityHashMap<FieldOfView, Entry>();
+    }
+
+    /**
+     * constructor
+     *
+     * @param selections
+     * @param cellSize - in pixel of original image
+     */
+    public FieldOfViewGridIndex(List<? extends FieldOfView> selections, int cellSize) {
+        this(cellSize);
+        for (FieldOfView field : selections) {
+            add(field);
+        }
+    }
+
+    /**
+     * add field to index ... does nothing if field is already in index
+     *
+     * @param field
+     */
+    public void add(FieldOfView field) {
+        if (entries.containsKey(field)) {
+            return;
+        }
+        Entry entry = new Entry(field, addCount++);
+        entries.put(field, entry);
+        register(entry);
+        field.addListener(this);
+    }
+
+    /**
+     * remove field from index
+     *
+     * @param field
+     * @return false if field is not in index
+     */
+    public boolean remove(FieldOfView field) {
+        Entry entry = entries.remove(field);
+        if (entry == null) {
+            return false;
+        }
+        unregister(entry);
+        field.removeListener(this);
+        return true;
+    }
+
+    /**
+     * remove all fields i.e. stop listening to them
+     */
+    public void clear() {
+        for (FieldOfView field : entries.keySet()) {
+            field.removeListener(this);
+        }
+        entries.clear();
+        cells.clear();
+        oversized.clear();
+    }
+
+    /**
+     * number of fields in index
+     *
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * check if field is in index
+     *
+     * @param field
+     * @return
+     */
+    public boolean contains(FieldOfView field) {
+        return entries.containsKey(field);
+    }
+
+    /**
+     * return all fields that are in view i.e. need to be drawn
+     *
+     * @param viewWindow
+     * @return
+     */
+    public ArrayList<FieldOfView> inView(ViewWindow viewWindow) {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>();
+        inView(viewWindow, result);
+        return result;
+    }
+
+    /**
+     * add all fields that are in view i.e. need to be drawn to result
+     *
+     * @param viewWindow
+     * @param result
+     */
+    public void inView(ViewWindow viewWindow, Collection<? super FieldOfView> result) {
+        CullingEvent event = Probes.beginCulling();
+        int before = result.size();
+        inView(viewWindow.getOriginalX(), viewWindow.getOriginalY(),
+                viewWindow.getOriginalX2(), viewWindow.getOriginalY2(), result);
+        Probes.endCulling(event, Probes.SOURCE_GRID_INDEX, entries.size(), result.size() - before);
+    }
+
+    /**
+     * add all fields whose bounding square intersects the rectangle (in
+     * coordinate system of original image) to result
+     *
+     * @param originalX
+     * @param originalY
+     * @param originalX2
+     * @param originalY2
+     * @param result
+     */
+    public void inView(int originalX, int originalY, int originalX2, int originalY2, Collection<? super FieldOfView> result) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        int minCol = cellOf(Math.min(originalX, originalX2));
+        int maxCol = cellOf(Math.max(originalX, originalX2));
+        int minRow = cellOf(Math.min(originalY, originalY2));
+        int maxRow = cellOf(Math.max(originalY, originalY2));
+        collect(oversized, 0, 0, minCol, minRow, originalX, originalY, originalX2, originalY2, result);
+        if (((long) maxCol - minCol + 1) * ((long) maxRow - minRow + 1) > cells.size()) {
+            // view window covers more cells than there are occupied cells ... visit occupied cells only
+            for (Map.Entry<Long, ArrayList<Entry>> cell : cells.entrySet()) {
+                long key = cell.getKey();
+                collect(cell.getValue(), (int) (key >> 32), (int) key, minCol, minRow, originalX, originalY, originalX2, originalY2, result);
+            }
+            return;
+        }
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                ArrayList<Entry> cell = cells.get(cellKey(col, row));
+                if (cell != null) {
+                    collect(cell, col, row, minCol, minRow, originalX, originalY, originalX2, originalY2, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * return the topmost field (i.e. the one added last) whose circle contains
+     * the point in coordinate system of original image
+     *
+     * returns null if there is no field at the point
+     *
+     * @param originalX
+     * @param originalY
+     * @return
+     */
+    public FieldOfView topmostAt(int originalX, int originalY) {
+        Entry topmost = topmostAt(oversized, originalX, originalY, null);
+        ArrayList<Entry> cell = cells.get(cellKey(cellOf(originalX), cellOf(originalY)));
+        if (cell != null) {
+            topmost = topmostAt(cell, originalX, originalY, topmost);
+        }
+        return topmost == null ? null : topmost.field;
+    }
+
+    /**
+     * return the topmost field under the mouse i.e. view coordinate
+     *
+     * returns null if there is no field at the point
+     *
+     * @param viewWindow
+     * @param viewX
+     * @param viewY
+     * @return
+     */
+    public FieldOfView topmostAt(ViewWindow viewWindow, int viewX, int viewY) {
+        return topmostAt(viewWindow.projectOriginalX(viewX), viewWindow.projectOriginalY(viewY));
+    }
+
+    @Override
+    public void geometryChanged(FieldOfView field, int oldX, int oldY, int oldDiameter) {
+        Entry entry = entries.get(field);
+        if (entry == null) {
+            return;
+        }
+        int minCol = cellOf(minExtent(field.getX(), field.getDiamter()));
+        int maxCol = cellOf(maxExtent(field.getX(), field.getDiamter()));
+        int minRow = cellOf(minExtent(field.getY(), field.getDiamter()));
+        int maxRow = cellOf(maxExtent(field.getY(), field.getDiamter()));
+        if (minCol == entry.minCol && maxCol == entry.maxCol && minRow == entry.minRow && maxRow == entry.maxRow) {
+            return; // still in the same cells
+        }
+        unregister(entry);
+        register(entry);
+    }
+
+    /**
+     * add matching entries of cell to result ... an entry spanning several
+     * cells is only reported from the first of its cells within the query
+     */
+    private static void collect(ArrayList<Entry> cell, int col, int row, int queryMinCol, int queryMinRow,
+            int originalX, int originalY, int originalX2, int originalY2, Collection<? super FieldOfView> result) {
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            FieldOfView field = entry.field;
+            int halfDiameter = field.getDiamter() / 2;
+            // same test as FieldOfView.inView(ViewWindow)
+            if (originalX <= (field.getX() + halfDiameter)
+                    && originalX2 >= (field.getX() - halfDiameter)
+                    && originalY <= (field.getY() + halfDiameter)
+                    && originalY2 >= (field.getY() - halfDiameter)
+                    && isFirstCell(entry, col, row, queryMinCol, queryMinRow)) {
+                result.add(field);
+            }
+        }
+    }
+
+    private static Entry topmostAt(ArrayList<Entry> cell, int originalX, int originalY, Entry topmost) {
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            if ((topmost == null || entry.order > topmost.order) && entry.field.inCircle(originalX, originalY)) {
+                topmost = entry;
+            }
+        }
+        return topmost;
+    }
+
+    private static boolean isFirstCell(Entry entry, int col, int row, int queryMinCol, int queryMinRow) {
+        if (entry.oversized) {
+            return true; // not in any cell
+        }
+        return col == Math.max(entry.minCol, queryMinCol) && row == Math.max(entry.minRow, queryMinRow);
+    }
+
+    private void register(Entry entry) {
+        FieldOfView field = entry.field;
+        entry.minCol = cellOf(minExtent(field.getX(), field.getDiamter()));
+        entry.maxCol = cellOf(maxExtent(field.getX(), field.getDiamter()));
+        entry.minRow = cellOf(minExtent(field.getY(), field.getDiamter()));
+        entry.maxRow = cellOf(maxExtent(field.getY(), field.getDiamter()));
+        entry.oversized = ((long) entry.maxCol - entry.minCol + 1) * ((long) entry.maxRow - entry.minRow + 1) > MAX_CELLS_PER_FIELD;
+        if (entry.oversized) {
+            oversized.add(entry);
+            return;
+        }
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                Long key = cellKey(col, row);
+                ArrayList<Entry> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>(4);
+                    cells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    private void unregister(Entry entry) {
+        if (entry.oversized) {
+            oversized.remove(entry);
+            return;
+        }
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                Long key = cellKey(col, row);
+                ArrayList<Entry> cell = cells.get(key);
+                if (cell != null) {
+                    cell.remove(entry);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * lower end of the bounding square along one axis, as in
+     * FieldOfView.inView()
+     */
+    private static int minExtent(int centre, int diameter) {
+        return Math.min(centre - diameter / 2, centre + diameter / 2); // diameter may (in theory) be negative
+    }
+
+    private static int maxExtent(int centre, int diameter) {
+        return Math.max(centre - diameter / 2, centre + diameter / 2);
+    }
+
+    private int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    private static Long cellKey(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * get notified when a field of view changes e.g. to keep an index up to date
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+
+/**
+ *
+ * @author samuelc
+ */
+public interface FieldOfViewListener {
+
+    /**
+     * called after x, y or diameter of field has changed
+     *
+     * @param field
+     * @param oldX
+     * @param oldY
+     * @param oldDiameter
+     */
+    default void geometryChanged(FieldOfView field, int oldX, int oldY, int oldDiameter) {
+        // do nothing by default
+    }
+
+    /**
+     * called after viewing state or scoring state of field has changed
+     *
+     * @param field
+     * @param oldViewingState
+     * @param oldScoringState
+     */
+    default void stateChanged(FieldOfView field, ViewingState oldViewingState, ScoringState oldScoringState) {
+        // do nothing by default
+    }
+}
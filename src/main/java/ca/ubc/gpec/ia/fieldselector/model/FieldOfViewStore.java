@@ -0,0 +1,443 @@
+/*
+ * column oriented store of many fields of view
+ *
+ * x, y and diameter are kept in int[] and the viewing/scoring/Ki67 states are
+ * packed into one byte per field, instead of one FieldOfView object (plus 3
+ * enum references) per field.  meant for holding the selections of many
+ * slides in memory e.g. server side batch jobs.
+ *
+ * fields are identified by their index (0 .. size()-1).  get() / asList()
+ * return FieldOfView objects backed by the store for existing callers.
+ *
+ * packed state byte (bit 0 is the lowest bit)
+ * bit 0-2 Ki67State ordinal
+ * bit 3-4 ViewingState ordinal
+ * bit 5-6 ScoringState ordinal
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.metrics.CullingEvent;
+import ca.ubc.gpec.ia.fieldselector.metrics.Probes;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldOfViewStore {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final ViewingState[] VIEWING_STATES = ViewingState.values();
+    private static final ScoringState[] SCORING_STATES = ScoringState.values();
+    private static final Ki67State[] KI67_STATES = Ki67State.values();
+    private int[] xs;
+    private int[] ys;
+    private int[] diameters;
+    private byte[] states; // see packStates()
+    private int size;
+
+    /**
+     * constructor
+     */
+    public FieldOfViewStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor
+     *
+     * @param capacity - initial capacity
+     */
+    public FieldOfViewStore(int capacity) {
+        xs = new int[capacity];
+        ys = new int[capacity];
+        diameters = new int[capacity];
+        states = new byte[capacity];
+    }
+
+    /**
+     * constructor ... copies selections
+     *
+     * @param selections
+     */
+    public FieldOfViewStore(List<? extends FieldOfView> selections) {
+        this(selections.size());
+        for (FieldOfView field : selections) {
+            add(field);
+        }
+    }
+
+    /**
+     * parse a param string (see FieldSelectionParamStringParser) straight
+     * into a new store, without creating FieldOfView objects
+     *
+     * @param paramString
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    public static FieldOfViewStore parse(CharSequence paramString) throws FieldSelectionParamStringParseException {
+        FieldOfViewStore store = new FieldOfViewStore();
+        if (paramString == null) {
+            return store;
+        }
+        int end = FieldSelectionParamStringScanner.trimEnd(paramString, 0, paramString.length());
+        int begin = FieldSelectionParamStringScanner.trimBegin(paramString, 0, end);
+        if (FieldSelectionParamStringScanner.scan(paramString, begin, end, store::add) != FieldSelectionParamStringScanner.NO_ERROR) {
+            // malformed ... let the parser report it
+            return new FieldOfViewStore(new FieldSelectionParamStringParser(paramString).getAllSelections());
+        }
+        return store;
+    }
+
+    /**
+     * add a field
+     *
+     * @param x
+     * @param y
+     * @param diameter
+     * @param viewingState
+     * @param scoringState
+     * @param ki67State
+     * @return index of the new field
+     */
+    public int add(int x, int y, int diameter, ViewingState viewingState, ScoringState scoringState, Ki67State ki67State) {
+        if (size == xs.length) {
+            grow();
+        }
+        xs[size] = x;
+        ys[size] = y;
+        diameters[size] = diameter;
+        states[size] = packStates(viewingState, scoringState, ki67State);
+        return size++;
+    }
+
+    /**
+     * add a copy of field
+     *
+     * @param field
+     * @return index of the new field
+     */
+    public int add(FieldOfView field) {
+        return add(field.getX(), field.getY(), field.getDiamter(),
+                field.getViewingState(), field.getScoringState(), field.getKi67State());
+    }
+
+    /**
+     * remove field at index ... fields after it move down by one
+     *
+     * NOTE: FieldOfView objects returned by get() for the moved fields now
+     * point to the next field
+     *
+     * @param index
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int moved = size - index - 1;
+        System.arraycopy(xs, index + 1, xs, index, moved);
+        System.arraycopy(ys, index + 1, ys, index, moved);
+        System.arraycopy(diameters, index + 1, diameters, index, moved);
+        System.arraycopy(states, index + 1, states, index, moved);
+        size--;
+    }
+
+    /**
+     * remove all fields ... keeps the capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * shrink capacity to size
+     */
+    public void trimToSize() {
+        xs = Arrays.copyOf(xs, size);
+        ys = Arrays.copyOf(ys, size);
+        diameters = Arrays.copyOf(diameters, size);
+        states = Arrays.copyOf(states, size);
+    }
+
+    /**
+     * number of fields
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters & setters                       ///
+    public int getX(int index) {
+        checkIndex(index);
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        checkIndex(index);
+        return ys[index];
+    }
+
+    public int getDiameter(int index) {
+        checkIndex(index);
+        return diameters[index];
+    }
+
+    public ViewingState getViewingState(int index) {
+        checkIndex(index);
+        return VIEWING_STATES[(states[index] >> 3) & 0x3];
+    }
+
+    public ScoringState getScoringState(int index) {
+        checkIndex(index);
+        return SCORING_STATES[(states[index] >> 5) & 0x3];
+    }
+
+    public Ki67State getKi67State(int index) {
+        checkIndex(index);
+        return KI67_STATES[states[index] & 0x7];
+    }
+
+    public void setGeometry(int index, int x, int y, int diameter) {
+        checkIndex(index);
+        xs[index] = x;
+        ys[index] = y;
+        diameters[index] = diameter;
+    }
+
+    public void setStates(int index, ViewingState viewingState, ScoringState scoringState) {
+        checkIndex(index);
+        states[index] = packStates(viewingState, scoringState, KI67_STATES[states[index] & 0x7]);
+    }
+
+    public void setKi67State(int index, Ki67State ki67State) {
+        checkIndex(index);
+        states[index] = (byte) ((states[index] & ~0x7) | ki67State.ordinal());
+    }
+    /// end of getters & setters                ///
+    ///////////////////////////////////////////////
+
+    /**
+     * number of fields with scoringState
+     *
+     * @param scoringState
+     * @return
+     */
+    public int count(ScoringState scoringState) {
+        int packed = scoringState.ordinal() << 5;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if ((states[i] & 0x60) == packed) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * number of fields per Ki67State
+     *
+     * @return array indexed by Ki67State.ordinal()
+     */
+    public int[] countByKi67State() {
+        int[] counts = new int[KI67_STATES.length];
+        for (int i = 0; i < size; i++) {
+            counts[states[i] & 0x7]++;
+        }
+        return counts;
+    }
+
+    /**
+     * indices of all fields with scoringState e.g. all SCORED fields
+     *
+     * @param scoringState
+     * @return
+     */
+    public int[] indicesOf(ScoringState scoringState) {
+        int packed = scoringState.ordinal() << 5;
+        int[] result = new int[count(scoringState)];
+        int n = 0;
+        for (int i = 0; i < size && n < result.length; i++) {
+            if ((states[i] & 0x60) == packed) {
+                result[n++] = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * index of the first field with viewingState e.g. the CURRENT field
+     *
+     * @param viewingState
+     * @return -1 if there is none
+     */
+    public int indexOf(ViewingState viewingState) {
+        int packed = viewingState.ordinal() << 3;
+        for (int i = 0; i < size; i++) {
+            if ((states[i] & 0x18) == packed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * indices of all fields in view (same test as
+     * FieldOfView.inView(ViewWindow))
+     *
+     * @param viewWindow
+     * @return
+     */
+    public int[] inView(ViewWindow viewWindow) {
+        CullingEvent event = Probes.beginCulling();
+        int[] result = inView(viewWindow.getOriginalX(), viewWindow.getOriginalY(),
+                viewWindow.getOriginalX2(), viewWindow.getOriginalY2());
+        Probes.endCulling(event, Probes.SOURCE_STORE, size, result.length);
+        return result;
+    }
+
+    /**
+     * indices of all fields whose bounding square intersects the rectangle in
+     * coordinate system of original image
+     *
+     * @param originalX
+     * @param originalY
+     * @param originalX2
+     * @param originalY2
+     * @return
+     */
+    public int[] inView(int originalX, int originalY, int originalX2, int originalY2) {
+        int[] result = new int[Math.min(size, DEFAULT_CAPACITY)];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int halfDiameter = diameters[i] / 2;
+            if (originalX <= (xs[i] + halfDiameter)
+                    && originalX2 >= (xs[i] - halfDiameter)
+                    && originalY <= (ys[i] + halfDiameter)
+                    && originalY2 >= (ys[i] - halfDiameter)) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, Math.min(size, n * 2));
+                }
+                result[n++] = i;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * return a FieldOfView backed by this store i.e. changes through its
+     * setters are written to the store
+     *
+     * NOTE: listeners added to the returned object are only notified of
+     * changes made through that object
+     *
+     * @param index
+     * @return
+     */
+    public FieldOfView get(int index) {
+        checkIndex(index);
+        return new StoredFieldOfView(index);
+    }
+
+    /**
+     * return a list view of this store ... elements are created by get()
+     *
+     * @return
+     */
+    public List<FieldOfView> asList() {
+        return new ListView();
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, xs.length + (xs.length >> 1));
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        diameters = Arrays.copyOf(diameters, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    private static byte packStates(ViewingState viewingState, ScoringState scoringState, Ki67State ki67State) {
+        return (byte) (ki67State.ordinal() | viewingState.ordinal() << 3 | scoringState.ordinal() << 5);
+    }
+
+    /**
+     * flyweight FieldOfView reading from / writing to the store
+     */
+    private class StoredFieldOfView extends FieldOfView {
+
+        private final int index;
+
+        StoredFieldOfView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getX() {
+            return FieldOfViewStore.this.getX(index);
+        }
+
+        @Override
+        public int getY() {
+            return FieldOfViewStore.this.getY(index);
+        }
+
+        @Override
+        public int getDiamter() {
+            return FieldOfViewStore.this.getDiameter(index);
+        }
+
+        @Override
+        public ViewingState getViewingState() {
+            return FieldOfViewStore.this.getViewingState(index);
+        }
+
+        @Override
+        public ScoringState getScoringState() {
+            return FieldOfViewStore.this.getScoringState(index);
+        }
+
+        @Override
+        public Ki67State getKi67State() {
+            return FieldOfViewStore.this.getKi67State(index);
+        }
+
+        @Override
+        protected void writeGeometry(int x, int y, int diameter) {
+            FieldOfViewStore.this.setGeometry(index, x, y, diameter);
+        }
+
+        @Override
+        protected void writeStates(ViewingState viewingState, ScoringState scoringState) {
+            FieldOfViewStore.this.setStates(index, viewingState, scoringState);
+        }
+    }
+
+    /**
+     * read only list view, see asList()
+     */
+    private class ListView extends AbstractList<FieldOfView> implements RandomAccess {
+
+        @Override
+        public FieldOfView get(int index) {
+            return FieldOfViewStore.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * place new fields of view so that they do not duplicate / overlap too much
+ * with the fields already placed
+ *
+ * see FieldOfView.equals() ... two fields at exactly the same location are a
+ * problem, the workaround is to move the new field by 1 or more pixels in X
+ * direction.  this engine does that (NUDGE) or refuses the new field (REJECT),
+ * for exact duplicates (same x, y, diameter) and for fields whose circles
+ * overlap more than maxOverlapFraction of the smaller circle.
+ *
+ * the placed fields are kept in a FieldOfViewGridIndex so that each check
+ * only looks at nearby fields i.e. importing n fields is O(n), not O(n^2).
+ * the index listens to the placed fields ... call close() when done with the
+ * engine, otherwise the fields keep it reachable.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldPlacementEngine implements AutoCloseable {
+
+    /**
+     * what to do with a new field that conflicts with a placed field
+     */
+    public enum Policy {
+        NUDGE, // move it in X direction until there is no conflict
+        REJECT // do not place it
+    }
+
+    public static final double DUPLICATES_ONLY = 1.0; // maxOverlapFraction to only catch exact duplicates ... a field inside another is not a conflict
+    private final double maxOverlapFraction;
+    private final Policy policy;
+    private final int maxNudge; // in pixel ... give up (reject) if the field would need to move further
+    private final FieldOfViewGridIndex placed;
+    private final ArrayList<FieldOfView> candidates; // reused for grid queries
+
+    /**
+     * constructor
+     *
+     * @param maxOverlapFraction - 0 to 1, fraction of the smaller circle
+     * @param policy
+     * @param maxNudge - in pixel of original image
+     */
+    public FieldPlacementEngine(double maxOverlapFraction, Policy policy, int maxNudge) {
+        if (maxOverlapFraction < 0 || maxOverlapFraction > 1) {
+            throw new IllegalArgumentException("maxOverlapFraction must be within 0 to 1: " + maxOverlapFraction);
+        }
+        this.maxOverlapFraction = maxOverlapFraction;
+        this.policy = policy;
+        this.maxNudge = maxNudge;
+        placed = new FieldOfViewGridIndex(FieldOfViewGridIndex.DEFAULT_CELL_SIZE);
+        candidates = new ArrayList<FieldOfView>();
+    }
+
+    /**
+     * constructor ... existing fields are placed as is i.e. without checking
+     *
+     * @param existing
+     * @param maxOverlapFraction - 0 to 1, fraction of the smaller circle
+     * @param policy
+     * @param maxNudge - in pixel of original image
+     */
+    public FieldPlacementEngine(List<? extends FieldOfView> existing, double maxOverlapFraction, Policy policy, int maxNudge) {
+        this(maxOverlapFraction, policy, maxNudge);
+        for (FieldOfView field : existing) {
+            placed.add(field);
+        }
+    }
+
+    /**
+     * try to place field ... with Policy.NUDGE, x of field may be changed
+     *
+     * @param field
+     * @return true if field is placed, false if rejected
+     */
+    public boolean place(FieldOfView field) {
+        if (findConflict(field) != null) {
+            if (policy == Policy.REJECT || !nudge(field)) {
+                return false;
+            }
+        }
+        placed.add(field);
+        return true;
+    }
+
+    /**
+     * place all fields, in order
+     *
+     * @param fields
+     * @return the fields that are placed
+     */
+    public ArrayList<FieldOfView> placeAll(List<? extends FieldOfView> fields) {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(fields.size());
+        for (FieldOfView field : fields) {
+            if (place(field)) {
+                result.add(field);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * remove a placed field e.g. when the user deletes it
+     *
+     * @param field
+     * @return false if field is not placed
+     */
+    public boolean remove(FieldOfView field) {
+        return placed.remove(field);
+    }
+
+    /**
+     * forget all placed fields i.e. stop listening to them ... the engine is
+     * empty afterwards
+     */
+    @Override
+    public void close() {
+        placed.clear();
+    }
+
+    /**
+     * return a placed field that field duplicates or overlaps too much with
+     *
+     * returns null if there is none
+     *
+     * @param field
+     * @return
+     */
+    public FieldOfView findConflict(FieldOfView field) {
+        // exact duplicates only => only fields around the centre point matter
+        int halfDiameter = maxOverlapFraction >= DUPLICATES_ONLY ? 0 : Math.abs(field.getDiamter() / 2);
+        candidates.clear();
+        placed.inView(field.getX() - halfDiameter, field.getY() - halfDiameter,
+                field.getX() + halfDiameter, field.getY() + halfDiameter, candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            FieldOfView other = candidates.get(i);
+            if (other != field && conflicts(field, other)) {
+                candidates.clear();
+                return other;
+            }
+        }
+        candidates.clear();
+        return null;
+    }
+
+    /**
+     * fraction of the smaller circle covered by the other circle (0 to 1)
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static double overlapFraction(FieldOfView a, FieldOfView b) {
+        double r1 = Math.abs(a.getDiamter()) / 2.0;
+        double r2 = Math.abs(b.getDiamter()) / 2.0;
+        double dX = (double) a.getX() - b.getX();
+        double dY = (double) a.getY() - b.getY();
+        if (dX * dX + dY * dY >= (r1 + r2) * (r1 + r2)) {
+            return 0; // apart
+        }
+        double d = Math.sqrt(dX * dX + dY * dY);
+        double smaller = Math.min(r1, r2);
+        if (d <= Math.abs(r1 - r2)) {
+            return 1; // smaller circle is inside the bigger one
+        }
+        // area of the lens shaped intersection
+        double lens = r1 * r1 * Math.acos((d * d + r1 * r1 - r2 * r2) / (2 * d * r1))
+                + r2 * r2 * Math.acos((d * d + r2 * r2 - r1 * r1) / (2 * d * r2))
+                - 0.5 * Math.sqrt((-d + r1 + r2) * (d + r1 - r2) * (d - r1 + r2) * (d + r1 + r2));
+        return Math.min(1, lens / (Math.PI * smaller * smaller));
+    }
+
+    private boolean conflicts(FieldOfView field, FieldOfView other) {
+        if (field.getX() == other.getX() && field.getY() == other.getY() && field.getDiamter() == other.getDiamter()) {
+            return true; // exact duplicate
+        }
+        if (maxOverlapFraction >= DUPLICATES_ONLY) {
+            return false; // overlapFraction() is never > 1
+        }
+        return overlapFraction(field, other) > maxOverlapFraction;
+    }
+
+    /**
+     * move field in X direction (1, -1, 2, -2, 4, -4 ... pixels) until it no
+     * longer conflicts
+     *
+     * @return false if not possible within maxNudge ... field is left as is
+     */
+    private boolean nudge(FieldOfView field) {
+        int originalX = field.getX();
+        for (int step = 1; step <= maxNudge && step > 0; step *= 2) {
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                field.setX(originalX + sign * step);
+                if (findConflict(field) == null) {
+                    return true;
+                }
+            }
+        }
+        field.setX(originalX);
+        return false;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * compact binary format for field selections, alternative to the text param
+ * string (see FieldSelectionParamStringParser)
+ *
+ * binary format:
+ * [version byte]
+ * [varint number of diameter runs] ([varint run length][zigzag varint diameter])*
+ * [varint number of selections] ([state byte][zigzag varint dX][zigzag varint dY])*
+ *
+ * dX/dY are relative to the previous selection (the first one is relative to 0,0)
+ * so that selections close together take only a few bytes.
+ *
+ * state byte (bit 0 is the lowest bit)
+ * bit 0-2 Ki67 numeric code (see FieldSelectionParamStringParser.KI67_PP_LEVEL_*)
+ * bit 3-4 ViewingState ordinal
+ * bit 5-6 ScoringState ordinal
+ *
+ * URL safe version: BASE64_PREFIX followed by the binary format in URL safe
+ * base64 without padding.  BASE64_PREFIX can never start a text param string,
+ * therefore the server can use decodeAnyFormat() to accept either.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class FieldSelectionBinaryCodec {
+
+    public static final byte VERSION = 1;
+    public static final String BASE64_PREFIX = "~" + VERSION; // '~' is URL safe but not part of the text format
+    private static final ViewingState[] VIEWING_STATES = ViewingState.values();
+    private static final ScoringState[] SCORING_STATES = ScoringState.values();
+    private static final int MIN_BYTES_PER_SELECTION = 3; // state byte + dX + dY
+
+    private FieldSelectionBinaryCodec() {
+        // static methods only
+    }
+
+    /**
+     * encode selections in binary format
+     *
+     * @param selections
+     * @return
+     */
+    public static byte[] encode(List<? extends FieldOfView> selections) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + selections.size() * 6);
+        out.write(VERSION);
+
+        // diameters, run length encoded
+        int runs = 0;
+        for (int i = 0; i < selections.size(); i++) {
+            if (i == 0 || selections.get(i).getDiamter() != selections.get(i - 1).getDiamter()) {
+                runs++;
+            }
+        }
+        writeVarint(out, runs);
+        int i = 0;
+        while (i < selections.size()) {
+            int diameter = selections.get(i).getDiamter();
+            int runEnd = i + 1;
+            while (runEnd < selections.size() && selections.get(runEnd).getDiamter() == diameter) {
+                runEnd++;
+            }
+            writeVarint(out, runEnd - i);
+            writeVarint(out, zigzag(diameter));
+            i = runEnd;
+        }
+
+        // selections, delta encoded
+        writeVarint(out, selections.size());
+        int previousX = 0;
+        int previousY = 0;
+        for (FieldOfView field : selections) {
+            out.write(packStates(field));
+            writeVarint(out, zigzag(field.getX() - previousX));
+            writeVarint(out, zigzag(field.getY() - previousY));
+            previousX = field.getX();
+            previousY = field.getY();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * encode selections in URL safe format i.e. BASE64_PREFIX + base64
+     *
+     * @param selections
+     * @return
+     */
+    public static String encodeUrlSafe(List<? extends FieldOfView> selections) {
+        return BASE64_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(encode(selections));
+    }
+
+    /**
+     * decode binary format
+     *
+     * @param bytes
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    public static ArrayList<FieldOfView> decode(byte[] bytes) throws FieldSelectionParamStringParseException {
+        ByteReader in = new ByteReader(bytes);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new FieldSelectionParamStringParseException("unsupported binary field selection version: " + version);
+        }
+
+        // diameter runs ... expanded while reading the selections
+        int runs = in.readVarint();
+        if (runs < 0 || runs > in.remaining() / 2) {
+            throw new FieldSelectionParamStringParseException("invalid number of diameter runs: " + runs);
+        }
+        int[] runLengths = new int[runs];
+        int[] diameters = new int[runs];
+        for (int run = 0; run < runs; run++) {
+            runLengths[run] = in.readVarint();
+            diameters[run] = unzigzag(in.readVarint());
+            if (runLengths[run] <= 0) {
+                throw new FieldSelectionParamStringParseException("invalid diameter run length: " + runLengths[run]);
+            }
+        }
+
+        int count = in.readVarint();
+        if (count < 0 || count > in.remaining() / MIN_BYTES_PER_SELECTION) {
+            throw new FieldSelectionParamStringParseException("invalid number of selections: " + count);
+        }
+        ArrayList<FieldOfView> selections = new ArrayList<FieldOfView>(count);
+        int run = 0;
+        int usedInRun = 0;
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; i++) {
+            if (run < runs && usedInRun == runLengths[run]) {
+                run++;
+                usedInRun = 0;
+            }
+            if (run == runs) {
+                throw new FieldSelectionParamStringParseException("not enough diameters for " + count + " selections");
+            }
+            usedInRun++;
+            int states = in.readByte();
+            x += unzigzag(in.readVarint());
+            y += unzigzag(in.readVarint());
+            selections.add(unpackStates(states, x, y, diameters[run]));
+        }
+        if ((runs > 0 && (run != runs - 1 || usedInRun != runLengths[run])) || in.remaining() != 0) {
+            throw new FieldSelectionParamStringParseException("inconsistent binary field selection data");
+        }
+        return selections;
+    }
+
+    /**
+     * decode URL safe format i.e. BASE64_PREFIX + base64
+     *
+     * @param encoded
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    public static ArrayList<FieldOfView> decodeUrlSafe(CharSequence encoded) throws FieldSelectionParamStringParseException {
+        if (!isUrlSafeEncoded(encoded)) {
+            throw new FieldSelectionParamStringParseException("missing prefix " + BASE64_PREFIX);
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded.subSequence(BASE64_PREFIX.length(), encoded.length()).toString());
+        } catch (IllegalArgumentException e) {
+            throw new FieldSelectionParamStringParseException("invalid base64: " + e.getMessage());
+        }
+        return decode(bytes);
+    }
+
+    /**
+     * check if paramString is in URL safe binary format (as opposed to the text
+     * format)
+     *
+     * @param paramString
+     * @return
+     */
+    public static boolean isUrlSafeEncoded(CharSequence paramString) {
+        if (paramString == null || paramString.length() < BASE64_PREFIX.length()) {
+            return false;
+        }
+        for (int i = 0; i < BASE64_PREFIX.length(); i++) {
+            if (paramString.charAt(i) != BASE64_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * decode either the URL safe binary format or the text format
+     *
+     * @param paramString
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    public static FieldSelectionParamStringParser decodeAnyFormat(CharSequence paramString) throws FieldSelectionParamStringParseException {
+        if (isUrlSafeEncoded(paramString)) {
+            return new FieldSelectionParamStringParser(decodeUrlSafe(paramString));
+        }
+        return new FieldSelectionParamStringParser(paramString);
+    }
+
+    private static int packStates(FieldOfView field) {
+        return FieldSelectionParamStringParser.ki67StateToNumericCode(field.getKi67State())
+                | field.getViewingState().ordinal() << 3
+                | field.getScoringState().ordinal() << 5;
+    }
+
+    private static FieldOfView unpackStates(int states, int x, int y, int diameter) throws FieldSelectionParamStringParseException {
+        Ki67State ki67State = FieldSelectionParamStringParser.numericCodeToKi67State(states & 0x7);
+        int viewing = (states >> 3) & 0x3;
+        int scoring = (states >> 5) & 0x3;
+        if (ki67State == null || viewing >= VIEWING_STATES.length || scoring >= SCORING_STATES.length || (states & 0x80) != 0) {
+            throw new FieldSelectionParamStringParseException("invalid state byte: " + states);
+        }
+        return new FieldOfView(x, y, diameter, VIEWING_STATES[viewing], SCORING_STATES[scoring], ki67State);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * sequential reader over the binary format
+     */
+    private static class ByteReader {
+
+        private final byte[] bytes;
+        private int pos;
+
+        ByteReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int remaining() {
+            return bytes.length - pos;
+        }
+
+        int readByte() throws FieldSelectionParamStringParseException {
+            if (pos >= bytes.length) {
+                throw new FieldSelectionParamStringParseException("unexpected end of binary field selection data");
+            }
+            return bytes[pos++] & 0xFF;
+        }
+
+        int readVarint() throws FieldSelectionParamStringParseException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new FieldSelectionParamStringParseException("varint too long at byte " + pos);
+        }
+    }
+}
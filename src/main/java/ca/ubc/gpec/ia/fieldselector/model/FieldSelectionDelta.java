@@ -0,0 +1,309 @@
+/*
+ * the change between two lists of selections, to be sent instead of the whole
+ * param string (steps 4 and 8 in FieldSelectionParamStringParser)
+ *
+ * a field is identified by its location i.e. x, y and diameter (see
+ * FieldPlacementEngine ... two fields never share a location).  moving a field
+ * is therefore a remove followed by an add.
+ *
+ * delta string format:
+ * D[sequence number]_[change]_[change]...
+ *
+ * change
+ * A[selection] = add selection (appended at the end)
+ * R[selection] = remove selection at the location of [selection]
+ * U[selection] = update viewing/scoring state of selection at the location of [selection]
+ *
+ * [selection] is as in the param string e.g. 3822x4856y4000pp0no
+ *
+ * e.g.
+ * D12_U13474x4347y4000pp1ns_U7299x1828y4000pp3cs_A100x200y4000pp0no
+ *
+ * sequence numbers let the receiver detect lost, duplicate or out of order
+ * deltas, see FieldSelectionDeltaReceiver.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionDelta {
+
+    public static final char TAG_DELTA = 'D';
+    public static final char TAG_ADD = 'A';
+    public static final char TAG_REMOVE = 'R';
+    public static final char TAG_UPDATE = 'U';
+    private final long sequence;
+    private final ArrayList<FieldOfView> added;
+    private final ArrayList<FieldOfView> removed;
+    private final ArrayList<FieldOfView> updated;
+
+    /**
+     * constructor
+     *
+     * @param sequence
+     * @param added
+     * @param removed
+     * @param updated
+     */
+    public FieldSelectionDelta(long sequence, List<FieldOfView> added, List<FieldOfView> removed, List<FieldOfView> updated) {
+        this.sequence = sequence;
+        this.added = new ArrayList<FieldOfView>(added);
+        this.removed = new ArrayList<FieldOfView>(removed);
+        this.updated = new ArrayList<FieldOfView>(updated);
+    }
+
+    /**
+     * compute the changes needed to turn before into after
+     *
+     * @param sequence
+     * @param before
+     * @param after
+     * @return
+     */
+    public static FieldSelectionDelta compute(long sequence, List<? extends FieldOfView> before, List<? extends FieldOfView> after) {
+        HashMap<Location, FieldOfView> beforeByLocation = new HashMap<Location, FieldOfView>(before.size() * 2);
+        for (FieldOfView field : before) {
+            beforeByLocation.put(new Location(field), field);
+        }
+        ArrayList<FieldOfView> added = new ArrayList<FieldOfView>();
+        ArrayList<FieldOfView> removed = new ArrayList<FieldOfView>();
+        ArrayList<FieldOfView> updated = new ArrayList<FieldOfView>();
+        for (FieldOfView field : after) {
+            FieldOfView old = beforeByLocation.remove(new Location(field));
+            if (old == null) {
+                added.add(field);
+            } else if (old.getKi67State() != field.getKi67State()) {
+                // Ki67 state of a FieldOfView cannot be changed ... replace it
+                removed.add(old);
+                added.add(field);
+            } else if (old.getViewingState() != field.getViewingState() || old.getScoringState() != field.getScoringState()) {
+                updated.add(field);
+            }
+        }
+        // whatever is left in before is gone ... keep the order of before
+        for (FieldOfView field : before) {
+            if (beforeByLocation.get(new Location(field)) == field) {
+                removed.add(field);
+            }
+        }
+        return new FieldSelectionDelta(sequence, added, removed, updated);
+    }
+
+    /**
+     * parse delta string
+     *
+     * @param deltaString
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    public static FieldSelectionDelta parse(CharSequence deltaString) throws FieldSelectionParamStringParseException {
+        int end = FieldSelectionParamStringScanner.trimEnd(deltaString, 0, deltaString.length());
+        int pos = FieldSelectionParamStringScanner.trimBegin(deltaString, 0, end);
+        int headerEnd = FieldSelectionParamStringScanner.indexOfDelimiter(deltaString, pos, end);
+        if (headerEnd - pos < 2 || deltaString.charAt(pos) != TAG_DELTA) {
+            throw new FieldSelectionParamStringParseException("trying to get sequence number, parsing: " + deltaString);
+        }
+        long sequence = 0;
+        for (int i = pos + 1; i < headerEnd; i++) {
+            char c = deltaString.charAt(i);
+            if (c < '0' || c > '9' || sequence > (Long.MAX_VALUE - 9) / 10) {
+                throw new FieldSelectionParamStringParseException("trying to get sequence number, parsing: " + deltaString);
+            }
+            sequence = sequence * 10 + (c - '0');
+        }
+        ArrayList<FieldOfView> added = new ArrayList<FieldOfView>();
+        ArrayList<FieldOfView> removed = new ArrayList<FieldOfView>();
+        ArrayList<FieldOfView> updated = new ArrayList<FieldOfView>();
+        pos = headerEnd + 1;
+        while (pos < end) {
+            int changeEnd = FieldSelectionParamStringScanner.indexOfDelimiter(deltaString, pos, end);
+            ArrayList<FieldOfView> target;
+            switch (deltaString.charAt(pos)) {
+                case TAG_ADD:
+                    target = added;
+                    break;
+                case TAG_REMOVE:
+                    target = removed;
+                    break;
+                case TAG_UPDATE:
+                    target = updated;
+                    break;
+                default:
+                    throw new FieldSelectionParamStringParseException("unknown change at offset " + pos + " within: " + deltaString);
+            }
+            int error = FieldSelectionParamStringScanner.scanSelection(deltaString, pos + 1, changeEnd,
+                    (x, y, diameter, viewingState, scoringState, ki67State)
+                    -> target.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State)));
+            if (error != FieldSelectionParamStringScanner.NO_ERROR) {
+                throw new FieldSelectionParamStringParseException("malformed selection at offset " + error + " within: " + deltaString);
+            }
+            pos = changeEnd + 1;
+        }
+        return new FieldSelectionDelta(sequence, added, removed, updated);
+    }
+
+    /**
+     * write delta string to out
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void encode(Appendable out) throws IOException {
+        out.append(TAG_DELTA);
+        FieldSelectionParamStringEncoder.appendLong(out, sequence);
+        encode(out, TAG_REMOVE, removed);
+        encode(out, TAG_UPDATE, updated);
+        encode(out, TAG_ADD, added);
+    }
+
+    /**
+     * return delta string
+     *
+     * @return
+     */
+    public String encode() {
+        StringBuilder result = new StringBuilder();
+        try {
+            encode(result);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder does not throw IOException
+        }
+        return result.toString();
+    }
+
+    /**
+     * apply the changes to selections (without checking the sequence number,
+     * see FieldSelectionDeltaReceiver)
+     *
+     * removed/updated fields that are not in selections are ignored
+     *
+     * @param selections
+     */
+    public void apply(List<FieldOfView> selections) {
+        HashMap<Location, FieldOfView> byLocation = new HashMap<Location, FieldOfView>(selections.size() * 2);
+        for (FieldOfView field : selections) {
+            byLocation.put(new Location(field), field);
+        }
+        apply(selections, byLocation);
+    }
+
+    /**
+     * apply the changes to selections, byLocation is the index of selections by
+     * location and is kept up to date
+     *
+     * @param selections
+     * @param byLocation
+     */
+    void apply(List<FieldOfView> selections, HashMap<Location, FieldOfView> byLocation) {
+        for (FieldOfView field : removed) {
+            FieldOfView old = byLocation.remove(new Location(field));
+            if (old != null) {
+                removeSame(selections, old);
+            }
+        }
+        for (FieldOfView field : updated) {
+            FieldOfView old = byLocation.get(new Location(field));
+            if (old != null) {
+                old.setStates(field.getViewingState(), field.getScoringState());
+            }
+        }
+        for (FieldOfView field : added) {
+            FieldOfView copy = new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                    field.getViewingState(), field.getScoringState(), field.getKi67State());
+            FieldOfView old = byLocation.put(new Location(copy), copy);
+            if (old != null) {
+                removeSame(selections, old); // same location added again ... replace
+            }
+            selections.add(copy);
+        }
+    }
+
+    /**
+     * check if there is nothing to change
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<FieldOfView> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    public List<FieldOfView> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public List<FieldOfView> getUpdated() {
+        return Collections.unmodifiableList(updated);
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    private static void encode(Appendable out, char tag, List<FieldOfView> fields) throws IOException {
+        for (FieldOfView field : fields) {
+            out.append(FieldSelectionParamStringParser.DELIMITER);
+            out.append(tag);
+            FieldSelectionParamStringEncoder.encode(field, out);
+        }
+    }
+
+    /**
+     * remove field from selections by identity (FieldOfView.equals() also
+     * compares scoringState)
+     */
+    private static void removeSame(List<FieldOfView> selections, FieldOfView field) {
+        for (int i = selections.size() - 1; i >= 0; i--) {
+            if (selections.get(i) == field) {
+                selections.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * identity of a field i.e. x, y, diameter
+     */
+    static final class Location {
+
+        private final int x;
+        private final int y;
+        private final int diameter;
+
+        Location(FieldOfView field) {
+            x = field.getX();
+            y = field.getY();
+            diameter = field.getDiamter();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Location)) {
+                return false;
+            }
+            Location l = (Location) obj;
+            return x == l.x && y == l.y && diameter == l.diameter;
+        }
+
+        @Override
+        public int hashCode() {
+            return (x * 31 + y) * 31 + diameter;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * keeps a list of selections up to date from a stream of FieldSelectionDelta
+ *
+ * deltas must arrive with consecutive sequence numbers.  a delta that was
+ * already applied (sequence number too small) is ignored; a gap (sequence
+ * number too big) means a delta got lost, the receiver then needs the full
+ * param string again (see reset()).
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionDeltaReceiver {
+
+    /**
+     * outcome of apply()
+     */
+    public enum Result {
+        APPLIED, // selections are updated
+        DUPLICATE, // already applied ... ignored
+        OUT_OF_ORDER // delta(s) missing ... ignored, need reset() with the full selections
+    }
+
+    private final List<FieldOfView> selections;
+    private final HashMap<FieldSelectionDelta.Location, FieldOfView> byLocation;
+    private long sequence; // sequence number of the last applied delta
+
+    /**
+     * constructor
+     *
+     * @param selections - e.g. FieldSelectionParamStringParser.getAllSelections()
+     * @param sequence - sequence number of the state selections is in i.e.
+     * the next delta must have sequence + 1
+     */
+    public FieldSelectionDeltaReceiver(List<FieldOfView> selections, long sequence) {
+        this.selections = selections;
+        byLocation = new HashMap<FieldSelectionDelta.Location, FieldOfView>();
+        reset(sequence);
+    }
+
+    /**
+     * apply delta if it is the next one
+     *
+     * @param delta
+     * @return
+     */
+    public Result apply(FieldSelectionDelta delta) {
+        if (delta.getSequence() <= sequence) {
+            return Result.DUPLICATE;
+        }
+        if (delta.getSequence() != sequence + 1) {
+            return Result.OUT_OF_ORDER;
+        }
+        delta.apply(selections, byLocation);
+        sequence = delta.getSequence();
+        return Result.APPLIED;
+    }
+
+    /**
+     * call after selections has been replaced/changed other than through
+     * apply() e.g. after receiving the full param string
+     *
+     * @param sequence - sequence number of the state selections is in
+     */
+    public final void reset(long sequence) {
+        this.sequence = sequence;
+        byLocation.clear();
+        for (FieldOfView field : selections) {
+            byLocation.put(new FieldSelectionDelta.Location(field), field);
+        }
+    }
+
+    /**
+     * return sequence number of the last applied delta
+     *
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * return the selections being kept up to date
+     *
+     * @return
+     */
+    public List<FieldOfView> getSelections() {
+        return selections;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * streaming encoder for the field selection param string
+ *
+ * writes the selections straight into any Appendable (StringBuilder, Writer
+ * of a servlet response etc.) one char at a time, so no temporary String is
+ * created per selection.  see FieldSelectionParamStringParser for the format.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class FieldSelectionParamStringEncoder {
+
+    private FieldSelectionParamStringEncoder() {
+        // static methods only
+    }
+
+    /**
+     * return the exact number of chars encode() will write for selections ...
+     * use to pre-size the output buffer
+     *
+     * @param selections
+     * @return
+     */
+    public static int length(List<? extends FieldOfView> selections) {
+        int length = selections.isEmpty() ? 0 : selections.size() - 1; // DELIMITER's
+        for (FieldOfView field : selections) {
+            length += length(field);
+        }
+        return length;
+    }
+
+    /**
+     * return the exact number of chars encode() will write for a single field
+     *
+     * @param field
+     * @return
+     */
+    public static int length(FieldOfView field) {
+        return intLength(field.getX())
+                + 1 // TAG_X
+                + intLength(field.getY())
+                + 1 // TAG_Y
+                + intLength(field.getDiamter())
+                + 2 // TAG_KI67_PP
+                + intLength(FieldSelectionParamStringParser.ki67StateToNumericCode(field.getKi67State()))
+                + 2; // viewing state flag + scoring state flag
+    }
+
+    /**
+     * encode selections into a new String
+     *
+     * @param selections
+     * @return
+     */
+    public static String encode(List<? extends FieldOfView> selections) {
+        StringBuilder result = new StringBuilder(length(selections));
+        try {
+            encode(selections, result);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder does not throw IOException
+        }
+        return result.toString();
+    }
+
+    /**
+     * write selections to out
+     *
+     * @param selections
+     * @param out
+     * @throws IOException
+     */
+    public static void encode(List<? extends FieldOfView> selections, Appendable out) throws IOException {
+        boolean first = true;
+        for (FieldOfView field : selections) {
+            if (!first) {
+                out.append(FieldSelectionParamStringParser.DELIMITER);
+            }
+            encode(field, out);
+            first = false;
+        }
+    }
+
+    /**
+     * write a single field (without DELIMITER) to out
+     *
+     * @param field
+     * @param out
+     * @throws IOException
+     */
+    public static void encode(FieldOfView field, Appendable out) throws IOException {
+        appendInt(out, field.getX());
+        out.append(FieldSelectionParamStringParser.TAG_X);
+        appendInt(out, field.getY());
+        out.append(FieldSelectionParamStringParser.TAG_Y);
+        appendInt(out, field.getDiamter());
+        out.append(FieldSelectionParamStringParser.TAG_KI67_PP);
+        // figure out Ki67 state
+        appendInt(out, FieldSelectionParamStringParser.ki67StateToNumericCode(field.getKi67State()));
+
+        // figure out viewing state flag
+        switch (field.getViewingState()) {
+            case CURRENT:
+                out.append(FieldSelectionParamStringParser.TAG_VIEWING_STATE_CURRENT);
+                break;
+            case PREVIEW:
+                out.append(FieldSelectionParamStringParser.TAG_VIEWING_STATE_PREVIEW);
+                break;
+            case NOT_CURRENT:
+                out.append(FieldSelectionParamStringParser.TAG_VIEWING_STATE_NOT_CURRENT);
+                break;
+            default:
+                break;
+        }
+        // figure out scoring state flag
+        switch (field.getScoringState()) {
+            case NOT_SCORED:
+                out.append(FieldSelectionParamStringParser.TAG_SCORING_STATE_NOT_SCORED);
+                break;
+            case SCORING:
+                out.append(FieldSelectionParamStringParser.TAG_SCORING_STATE_SCORING);
+                break;
+            case SCORED:
+                out.append(FieldSelectionParamStringParser.TAG_SCORING_STATE_SCORED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * write decimal value to out without creating a String
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    static void appendInt(Appendable out, int value) throws IOException {
+        appendLong(out, value);
+    }
+
+    /**
+     * write decimal value to out without creating a String
+     *
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    static void appendLong(Appendable out, long value) throws IOException {
+        // work with negative numbers so that Long.MIN_VALUE is handled
+        long negative = value < 0 ? value : -value;
+        if (value < 0) {
+            out.append('-');
+        }
+        long divisor = -1;
+        while (divisor >= negative / 10) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            out.append((char) ('0' + negative / divisor));
+            negative %= divisor;
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * number of chars needed to write value in decimal
+     *
+     * @param value
+     * @return
+     */
+    static int intLength(int value) {
+        int negative = value < 0 ? value : -value;
+        int length = value < 0 ? 2 : 1;
+        while (negative <= -10) {
+            negative /= 10;
+            length++;
+        }
+        return length;
+    }
+}
@@ -42,9 +42,15 @@ package ca.ubc.gpec.ia.fieldselector.model;
 
 import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
 import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.metrics.EncodeEvent;
+import ca.ubc.gpec.ia.fieldselector.metrics.ParseEvent;
+import ca.ubc.gpec.ia.fieldselector.metrics.Probes;
 import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
 import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -68,6 +74,7 @@ public class FieldSelectionParamStringParser {
     public static final int KI67_PP_LEVEL_LOW = 1; // low percent positive
     public static final int KI67_PP_LEVEL_NEGLIGIBLE = 0; // negligible percent positive
     private ArrayList<FieldOfView> selections;
+    private SelectionList indexed; // selections if it is a SelectionList, null otherwise
 
     /**
      * convert Ki67State to numeric code
@@ -124,82 +131,258 @@ public class FieldSelectionParamStringParser {
      * @throws FieldSelectionParamStringParseException
      */
     public FieldSelectionParamStringParser(String inputParamString) throws FieldSelectionParamStringParseException {
-        String paramString = inputParamString;
-        paramString = paramString == null ? "" : paramString.trim();
-        selections = new ArrayList<FieldOfView>();
+        this((CharSequence) inputParamString);
+    }
+
+    /**
+     * constructor
+     *
+     * parse directly off the CharSequence in a single pass ... no intermediate
+     * String or array is created for well formed input.
+     *
+     * @param inputParamString
+     * @throws FieldSelectionParamStringParseException
+     */
+    public FieldSelectionParamStringParser(CharSequence inputParamString) throws FieldSelectionParamStringParseException {
+        indexed = new SelectionList();
+        selections = indexed;
+        ParseEvent event = Probes.beginParse();
+        int length = inputParamString == null ? 0 : inputParamString.length();
+        try {
+            parse(inputParamString);
+        } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+            Probes.endParse(event, length, 0, true);
+            throw e;
+        }
+        Probes.endParse(event, length, selections.size(), false);
+    }
+
+    /**
+     * single pass parsing, see FieldSelectionParamStringScanner
+     *
+     * @param inputParamString
+     * @throws FieldSelectionParamStringParseException
+     */
+    private void parse(CharSequence inputParamString) throws FieldSelectionParamStringParseException {
+        if (inputParamString == null) {
+            return; // no selection
+        }
+        int end = FieldSelectionParamStringScanner.trimEnd(inputParamString, 0, inputParamString.length());
+        int begin = FieldSelectionParamStringScanner.trimBegin(inputParamString, 0, end);
 
         // do parsing!!!
-        if (paramString.length() == 0) {
+        if (begin == end) {
             return; // no need to do anything else since there is no selection
         }
+        int error = FieldSelectionParamStringScanner.scan(inputParamString, begin, end,
+                (x, y, diameter, viewingState, scoringState, ki67State)
+                -> selections.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State)));
+        if (error != FieldSelectionParamStringScanner.NO_ERROR) {
+            // malformed input ... redo with split parsing so that the exception thrown is exactly the same as before
+            selections.clear();
+            parseBySplit(inputParamString.toString().trim());
+        }
+    }
 
+    /**
+     * original split based parsing ... only used for malformed input
+     *
+     * @param paramString - trimmed, non-empty
+     * @throws FieldSelectionParamStringParseException
+     */
+    private void parseBySplit(String paramString) throws FieldSelectionParamStringParseException {
         for (String selectionString : paramString.split(DELIMITER)) {
-            String[] temp = selectionString.split(TAG_X);
-            if (temp.length != 2) {
-                throw new FieldSelectionParamStringParseException("trying to get x value, parsing: (" + selectionString + ") within: " + paramString);
-            }
-            int x = Integer.parseInt(temp[0]);
-            String[] temp2 = temp[1].split(TAG_Y);
-            if (temp2.length != 2) {
-                throw new FieldSelectionParamStringParseException("trying to get y value, parsing: (" + temp[1] + ") within: " + paramString);
-            }
-            int y = Integer.parseInt(temp2[0]);
-            // figure out scoring state ... need to check this first because ASSUME scoring flag ALWAYS appear after viewing flag
-            ScoringState scoringState = ScoringState.NOT_SCORED; // default
-            if (temp2[1].endsWith(TAG_SCORING_STATE_SCORING)) {
-                scoringState = ScoringState.SCORING;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_SCORING.length());
-            } else if (temp2[1].endsWith(TAG_SCORING_STATE_SCORED)) {
-                scoringState = ScoringState.SCORED;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_SCORED.length());
-            } else if (temp2[1].endsWith(TAG_SCORING_STATE_NOT_SCORED)) {
-                scoringState = ScoringState.NOT_SCORED;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_NOT_SCORED.length());
-            }
-            // figure out view state ... 
-            ViewingState viewingState = ViewingState.NOT_CURRENT; // default
-            if (temp2[1].endsWith(TAG_VIEWING_STATE_CURRENT)) {
-                viewingState = ViewingState.CURRENT;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_CURRENT.length());
-            } else if (temp2[1].endsWith(TAG_VIEWING_STATE_PREVIEW)) {
-                viewingState = ViewingState.PREVIEW;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_PREVIEW.length());
-            } else if (temp2[1].endsWith(TAG_VIEWING_STATE_NOT_CURRENT)) {
-                viewingState = ViewingState.NOT_CURRENT;
-                temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_NOT_CURRENT.length());
+            selections.add(parseSelectionBySplit(selectionString, paramString));
+        }
+    }
+
+    /**
+     * original split based parsing of a single selection, see
+     * FieldSelectionParamStringScanner.scanLegacySelection()
+     *
+     * @param selectionString
+     * @param paramString - whole param string, for the exception message
+     * @return
+     * @throws FieldSelectionParamStringParseException
+     */
+    static FieldOfView parseSelectionBySplit(String selectionString, String paramString) throws FieldSelectionParamStringParseException {
+        String[] temp = selectionString.split(TAG_X);
+        if (temp.length != 2) {
+            throw new FieldSelectionParamStringParseException("trying to get x value, parsing: (" + selectionString + ") within: " + paramString);
+        }
+        int x = Integer.parseInt(temp[0]);
+        String[] temp2 = temp[1].split(TAG_Y);
+        if (temp2.length != 2) {
+            throw new FieldSelectionParamStringParseException("trying to get y value, parsing: (" + temp[1] + ") within: " + paramString);
+        }
+        int y = Integer.parseInt(temp2[0]);
+        // figure out scoring state ... need to check this first because ASSUME scoring flag ALWAYS appear after viewing flag
+        ScoringState scoringState = ScoringState.NOT_SCORED; // default
+        if (temp2[1].endsWith(TAG_SCORING_STATE_SCORING)) {
+            scoringState = ScoringState.SCORING;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_SCORING.length());
+        } else if (temp2[1].endsWith(TAG_SCORING_STATE_SCORED)) {
+            scoringState = ScoringState.SCORED;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_SCORED.length());
+        } else if (temp2[1].endsWith(TAG_SCORING_STATE_NOT_SCORED)) {
+            scoringState = ScoringState.NOT_SCORED;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_SCORING_STATE_NOT_SCORED.length());
+        }
+        // figure out view state ... 
+        ViewingState viewingState = ViewingState.NOT_CURRENT; // default
+        if (temp2[1].endsWith(TAG_VIEWING_STATE_CURRENT)) {
+            viewingState = ViewingState.CURRENT;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_CURRENT.length());
+        } else if (temp2[1].endsWith(TAG_VIEWING_STATE_PREVIEW)) {
+            viewingState = ViewingState.PREVIEW;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_PREVIEW.length());
+        } else if (temp2[1].endsWith(TAG_VIEWING_STATE_NOT_CURRENT)) {
+            viewingState = ViewingState.NOT_CURRENT;
+            temp2[1] = temp2[1].substring(0, temp2[1].length() - TAG_VIEWING_STATE_NOT_CURRENT.length());
+        }
+
+        String[] temp3 = temp2[1].split(TAG_KI67_PP);
+        int diameter = Integer.parseInt(temp3[0]);
+        Ki67State ki67State;
+        switch (Integer.parseInt(temp3[1])) {
+            case KI67_PP_LEVEL_HIGHEST:
+                ki67State = Ki67State.HOT_SPOT;
+                break;
+            case KI67_PP_LEVEL_HIGH:
+                ki67State = Ki67State.HIGH;
+                break;
+            case KI67_PP_LEVEL_MEDIUM:
+                ki67State = Ki67State.MEDIUM;
+                break;
+            case KI67_PP_LEVEL_LOW:
+                ki67State = Ki67State.LOW;
+                break;
+            default:
+                ki67State = Ki67State.NEGLIGIBLE;
+                break;
+        }
+        return new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State);
+    }
+
+    /**
+     * parse without throwing i.e. errors are returned ... cheap enough to
+     * check large amounts of (dirty) param strings
+     *
+     * accepts the same selections as the constructor.  those that only the
+     * split based rules accept are counted, see
+     * FieldSelectionParseResult.getLegacyCount()
+     *
+     * @param paramString - may be null
+     * @param lenient - skip malformed selections instead of stopping at the
+     * first one
+     * @return
+     */
+    public static FieldSelectionParseResult tryParse(CharSequence paramString, boolean lenient) {
+        return parseToResult(paramString, lenient, true);
+    }
+
+    /**
+     * as tryParse() but no FieldOfView is created i.e. getSelections() of the
+     * result returns null
+     *
+     * @param paramString - may be null
+     * @param lenient - count all malformed selections instead of stopping at
+     * the first one
+     * @return
+     */
+    public static FieldSelectionParseResult validate(CharSequence paramString, boolean lenient) {
+        return parseToResult(paramString, lenient, false);
+    }
+
+    /**
+     * counts (and keeps, if selections is not null) the well formed selections
+     */
+    private static final class FieldCollector implements FieldSelectionParamStringScanner.FieldHandler {
+
+        private final ArrayList<FieldOfView> selections;
+        private int count;
+
+        FieldCollector(ArrayList<FieldOfView> selections) {
+            this.selections = selections;
+        }
+
+        @Override
+        public void field(int x, int y, int diameter, ViewingState viewingState, ScoringState scoringState, Ki67State ki67State) {
+            count++;
+            if (selections != null) {
+                selections.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State));
             }
+        }
+    }
 
-            String[] temp3 = temp2[1].split(TAG_KI67_PP);
-            int diameter = Integer.parseInt(temp3[0]);
-            Ki67State ki67State;
-            switch (Integer.parseInt(temp3[1])) {
-                case KI67_PP_LEVEL_HIGHEST:
-                    ki67State = Ki67State.HOT_SPOT;
-                    break;
-                case KI67_PP_LEVEL_HIGH:
-                    ki67State = Ki67State.HIGH;
-                    break;
-                case KI67_PP_LEVEL_MEDIUM:
-                    ki67State = Ki67State.MEDIUM;
-                    break;
-                case KI67_PP_LEVEL_LOW:
-                    ki67State = Ki67State.LOW;
-                    break;
-                default:
-                    ki67State = Ki67State.NEGLIGIBLE;
-                    break;
+    private static FieldSelectionParseResult parseToResult(CharSequence paramString, boolean lenient, boolean keepSelections) {
+        FieldCollector collector = new FieldCollector(keepSelections ? new ArrayList<FieldOfView>() : null);
+        FieldSelectionParseResult.ErrorKind errorKind = FieldSelectionParseResult.ErrorKind.NONE;
+        int errorOffset = -1;
+        int errorCount = 0;
+        int legacyCount = 0;
+        if (paramString != null) {
+            char delimiter = DELIMITER.charAt(0);
+            int end = FieldSelectionParamStringScanner.trimEnd(paramString, 0, paramString.length());
+            int pos = FieldSelectionParamStringScanner.trimBegin(paramString, 0, end);
+            while (end > pos && paramString.charAt(end - 1) == delimiter) {
+                end--; // trailing delimiters are allowed
+            }
+            while (pos < end) {
+                int segmentEnd = FieldSelectionParamStringScanner.indexOfDelimiter(paramString, pos, end);
+                FieldSelectionParseResult.ErrorKind kind = FieldSelectionParseResult.ErrorKind.EMPTY_SELECTION;
+                int offset = pos;
+                if (segmentEnd > pos) {
+                    long error = FieldSelectionParamStringScanner.scanSelectionCode(paramString, pos, segmentEnd, collector);
+                    kind = error == FieldSelectionParamStringScanner.NO_ERROR
+                            ? FieldSelectionParseResult.ErrorKind.NONE
+                            : FieldSelectionParamStringScanner.errorKind(error);
+                    offset = FieldSelectionParamStringScanner.errorOffset(error);
+                    if (kind != FieldSelectionParseResult.ErrorKind.NONE
+                            && FieldSelectionParamStringScanner.scanLegacySelection(paramString, pos, segmentEnd, collector)) {
+                        kind = FieldSelectionParseResult.ErrorKind.NONE; // accepted by the constructor too
+                        legacyCount++;
+                    }
+                }
+                if (kind != FieldSelectionParseResult.ErrorKind.NONE) {
+                    if (errorCount++ == 0) {
+                        errorKind = kind;
+                        errorOffset = offset;
+                    }
+                    if (!lenient) {
+                        // strict i.e. all or nothing
+                        return new FieldSelectionParseResult(keepSelections ? new ArrayList<FieldOfView>() : null, 0, errorKind, errorOffset, errorCount, 0);
+                    }
+                }
+                pos = segmentEnd + 1;
             }
-            selections.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State));
         }
+        return new FieldSelectionParseResult(collector.selections, collector.count, errorKind, errorOffset, errorCount, legacyCount);
     }
 
     /**
      * constructor
      *
+     * NOTE: selections is used as is i.e. getAllSelections() returns it.  if
+     * it is a SelectionList, its state index is used for the queries below,
+     * otherwise they scan the list (see indexedCopyOf())
+     *
      * @param selections
      */
     public FieldSelectionParamStringParser(ArrayList<FieldOfView> selections) {
         this.selections = selections;
+        indexed = selections instanceof SelectionList ? (SelectionList) selections : null;
+    }
+
+    /**
+     * return parser of a copy of selections, in a SelectionList i.e. with
+     * indexed queries ... later changes to selections itself are not seen
+     *
+     * @param selections
+     * @return
+     */
+    public static FieldSelectionParamStringParser indexedCopyOf(List<? extends FieldOfView> selections) {
+        return new FieldSelectionParamStringParser(new SelectionList(selections));
     }
 
     /**
@@ -208,43 +391,22 @@ public class FieldSelectionParamStringParser {
      * @return
      */
     public String generateFieldSelectionParamString() {
-        String result = "";
-        for (FieldOfView field : selections) {
-            result = result + field.getX() + TAG_X + field.getY() + TAG_Y + field.getDiamter() + TAG_KI67_PP;
-            // figure out Ki67 state
-            result = result + ki67StateToNumericCode(field.getKi67State());
+        EncodeEvent event = Probes.beginEncode();
+        String result = FieldSelectionParamStringEncoder.encode(selections);
+        Probes.endEncode(event, selections.size(), result.length());
+        return result;
+    }
 
-            // figure out viewing state flag
-            switch (field.getViewingState()) {
-                case CURRENT:
-                    result = result + TAG_VIEWING_STATE_CURRENT;
-                    break;
-                case PREVIEW:
-                    result = result + TAG_VIEWING_STATE_PREVIEW;
-                    break;
-                case NOT_CURRENT:
-                    result = result + TAG_VIEWING_STATE_NOT_CURRENT;
-                    break;
-                default:
-                    break;
-            }
-            // figure out scoring state flag
-            switch (field.getScoringState()) {
-                case NOT_SCORED:
-                    result = result + TAG_SCORING_STATE_NOT_SCORED;
-                    break;
-                case SCORING:
-                    result = result + TAG_SCORING_STATE_SCORING;
-                    break;
-                case SCORED:
-                    result = result + TAG_SCORING_STATE_SCORED;
-                    break;
-                default:
-                    break;
-            }
-            result = result + DELIMITER;
-        }
-        return result.length() == 0 ? "" : result.substring(0, result.length() - DELIMITER.length()); // need to get rid of the last DELIMITER
+    /**
+     * write fieldSelectionParamString to out e.g. a servlet response Writer
+     *
+     * use FieldSelectionParamStringEncoder.length() to pre-size out if needed
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeFieldSelectionParamString(Appendable out) throws IOException {
+        FieldSelectionParamStringEncoder.encode(selections, out);
     }
 
     /**
@@ -255,6 +417,9 @@ public class FieldSelectionParamStringParser {
      * @return
      */
     public FieldOfView getCurrentScoringSelection() {
+        if (indexed != null) {
+            return indexed.getCurrentViewing(); // null if no current scoring selection or selection is empty
+        }
         for (FieldOfView fieldOfView : selections) {
             if (fieldOfView.isCurrentViewing()) {
                 return fieldOfView;
@@ -263,6 +428,27 @@ public class FieldSelectionParamStringParser {
         return null; // no current scoring selection or selection is empty
     }
 
+    /**
+     * make field the current scoring selection ... the previous current
+     * scoring selection becomes NOT_CURRENT
+     *
+     * @param field - null for no current scoring selection
+     */
+    public void setCurrentScoringSelection(FieldOfView field) {
+        if (indexed != null) {
+            indexed.setCurrentViewing(field);
+            return;
+        }
+        for (FieldOfView fieldOfView : selections) {
+            if (fieldOfView != field && fieldOfView.isCurrentViewing()) {
+                fieldOfView.setViewingState(ViewingState.NOT_CURRENT);
+            }
+        }
+        if (field != null) {
+            field.setViewingState(ViewingState.CURRENT);
+        }
+    }
+
     /**
      * return list of all scored selection
      *
@@ -272,13 +458,28 @@ public class FieldSelectionParamStringParser {
      * @return
      */
     public ArrayList<FieldOfView> getScoredSelections() {
+        return new ArrayList<FieldOfView>(getScoredSelectionsView());
+    }
+
+    /**
+     * return live, unmodifiable view of all scored selection i.e. not a copy
+     *
+     * NOTE: live only if the selections are a SelectionList (always the case
+     * when parsed), otherwise an unmodifiable copy
+     *
+     * @return
+     */
+    public List<FieldOfView> getScoredSelectionsView() {
+        if (indexed != null) {
+            return indexed.with(ScoringState.SCORED);
+        }
         ArrayList<FieldOfView> result = new ArrayList<FieldOfView>();
         for (FieldOfView fieldOfView : selections) {
             if (fieldOfView.isScored()) {
                 result.add(fieldOfView);
             }
         }
-        return result;
+        return Collections.unmodifiableList(result);
     }
 
     /**
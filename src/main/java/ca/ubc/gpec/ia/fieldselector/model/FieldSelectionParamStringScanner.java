@@ -0,0 +1,381 @@
+/*
+ * single pass scanner for the field selection param string
+ *
+ * reads the digits and flags of each selection directly off a CharSequence
+ * without creating any intermediate String or array.  see
+ * FieldSelectionParamStringParser for a description of the format.
+ *
+ * the scanner reads the well formed grammar:
+ * [int]x[int]y[int]pp[int][viewing state flag]?[scoring state flag]?
+ * separated by DELIMITER, with any number of trailing DELIMITER.  a selection
+ * that does not follow it is checked again with the rules of the original
+ * split based parsing (slow), so that scan() and scanSelection() accept
+ * exactly the selections the FieldSelectionParamStringParser constructor
+ * accepts e.g. also a stray x or y after the state flags.  anything else is
+ * reported by returning the offset at which scanning stopped, so that the
+ * caller can decide how to report the problem.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParseResult.ErrorKind;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class FieldSelectionParamStringScanner {
+
+    /**
+     * returned by scan() when the whole input is well formed
+     */
+    public static final int NO_ERROR = -1;
+    private static final char DELIMITER = '_';
+    private static final char TAG_X = 'x';
+    private static final char TAG_Y = 'y';
+    private static final char TAG_KI67_PP = 'p'; // "pp" i.e. twice
+    private static final long NOT_AN_INT = Long.MIN_VALUE;
+
+    /**
+     * receives the selections found by the scanner, in order
+     */
+    public interface FieldHandler {
+
+        void field(int x, int y, int diameter, ViewingState viewingState, ScoringState scoringState, Ki67State ki67State);
+    }
+
+    private FieldSelectionParamStringScanner() {
+        // static methods only
+    }
+
+    /**
+     * scan paramString[begin, end) and report every selection to handler
+     *
+     * NOTE: handler may already have received some selections when an error
+     * is returned.
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @param handler
+     * @return NO_ERROR or the offset at which the input is not well formed
+     */
+    public static int scan(CharSequence paramString, int begin, int end, FieldHandler handler) {
+        int pos = begin;
+        while (pos < end) {
+            int segmentEnd = indexOfDelimiter(paramString, pos, end);
+            if (segmentEnd == pos) {
+                // empty selection ... only allowed if nothing but delimiters follow
+                return onlyDelimiters(paramString, pos, end) ? NO_ERROR : pos;
+            }
+            int error = scanSelection(paramString, pos, segmentEnd, handler);
+            if (error != NO_ERROR) {
+                return error;
+            }
+            pos = segmentEnd + 1;
+        }
+        return NO_ERROR;
+    }
+
+    /**
+     * scan a single selection i.e. paramString[begin, end) contains no
+     * DELIMITER
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @param handler
+     * @return NO_ERROR or the offset at which the selection is not well formed
+     */
+    public static int scanSelection(CharSequence paramString, int begin, int end, FieldHandler handler) {
+        long error = scanSelectionCode(paramString, begin, end, handler);
+        if (error == NO_ERROR || scanLegacySelection(paramString, begin, end, handler)) {
+            return NO_ERROR;
+        }
+        return errorOffset(error);
+    }
+
+    /**
+     * scan a single selection with the rules of the original split based
+     * parsing (see FieldSelectionParamStringParser.parseSelectionBySplit())
+     * ... slow, use only if scanSelectionCode() failed
+     *
+     * besides the well formed grammar, these rules accept e.g. a stray x or y
+     * after the state flags ("3822x4856y4000pp0nox") or anything after a
+     * second pp ("3822x4856y4000pp0pp1no").
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @param handler
+     * @return true if accepted i.e. the selection was reported to handler
+     */
+    static boolean scanLegacySelection(CharSequence paramString, int begin, int end, FieldHandler handler) {
+        String selectionString = paramString.subSequence(begin, end).toString();
+        FieldOfView field;
+        try {
+            field = FieldSelectionParamStringParser.parseSelectionBySplit(selectionString, selectionString);
+        } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+            return false;
+        }
+        handler.field(field.getX(), field.getY(), field.getDiamter(), field.getViewingState(), field.getScoringState(), field.getKi67State());
+        return true;
+    }
+
+    /**
+     * return end of the state flags of the selection paramString[begin, end)
+     * i.e. end without the trailing y and x chars that the split based
+     * parsing ignores (see scanLegacySelection())
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @return
+     */
+    static int flagsEnd(CharSequence paramString, int begin, int end) {
+        while (end > begin && paramString.charAt(end - 1) == TAG_X) {
+            end--;
+        }
+        while (end > begin && paramString.charAt(end - 1) == TAG_Y) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * as scanSelection() but the error also tells what is wrong ... the well
+     * formed grammar only, see scanLegacySelection()
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @param handler
+     * @return NO_ERROR or error code (see errorOffset(), errorKind())
+     */
+    static long scanSelectionCode(CharSequence paramString, int begin, int end, FieldHandler handler) {
+        // x
+        int pos = begin;
+        int tagPos = intEnd(paramString, pos, end);
+        if (tagPos < 0 || tagPos == end || paramString.charAt(tagPos) != TAG_X) {
+            return error(ErrorKind.BAD_X, tagPos < 0 ? pos : tagPos);
+        }
+        long x = parseInt(paramString, pos, tagPos);
+        if (x == NOT_AN_INT) {
+            return error(ErrorKind.NUMBER_OVERFLOW, pos);
+        }
+        // y
+        pos = tagPos + 1;
+        tagPos = intEnd(paramString, pos, end);
+        if (tagPos < 0 || tagPos == end || paramString.charAt(tagPos) != TAG_Y) {
+            return error(ErrorKind.BAD_Y, tagPos < 0 ? pos : tagPos);
+        }
+        long y = parseInt(paramString, pos, tagPos);
+        if (y == NOT_AN_INT) {
+            return error(ErrorKind.NUMBER_OVERFLOW, pos);
+        }
+        // diameter
+        pos = tagPos + 1;
+        tagPos = intEnd(paramString, pos, end);
+        if (tagPos < 0 || tagPos + 1 >= end
+                || paramString.charAt(tagPos) != TAG_KI67_PP
+                || paramString.charAt(tagPos + 1) != TAG_KI67_PP) {
+            return error(ErrorKind.BAD_DIAMETER, tagPos < 0 ? pos : tagPos);
+        }
+        long diameter = parseInt(paramString, pos, tagPos);
+        if (diameter == NOT_AN_INT) {
+            return error(ErrorKind.NUMBER_OVERFLOW, pos);
+        }
+        // Ki67 level
+        pos = tagPos + 2;
+        tagPos = intEnd(paramString, pos, end);
+        if (tagPos < 0) {
+            return error(ErrorKind.BAD_KI67_LEVEL, pos);
+        }
+        long level = parseInt(paramString, pos, tagPos);
+        if (level == NOT_AN_INT) {
+            return error(ErrorKind.NUMBER_OVERFLOW, pos);
+        }
+        Ki67State ki67State = FieldSelectionParamStringParser.numericCodeToKi67State((int) level);
+        if (ki67State == null) {
+            ki67State = Ki67State.NEGLIGIBLE; // unknown level
+        }
+        // viewing state flag (optional)
+        pos = tagPos;
+        ViewingState viewingState = pos < end ? viewingStateOf(paramString.charAt(pos)) : null;
+        if (viewingState == null) {
+            viewingState = ViewingState.NOT_CURRENT; // default
+        } else {
+            pos++;
+        }
+        // scoring state flag (optional)
+        ScoringState scoringState = pos < end ? scoringStateOf(paramString.charAt(pos)) : null;
+        if (scoringState == null) {
+            scoringState = ScoringState.NOT_SCORED; // default
+        } else {
+            pos++;
+        }
+        if (pos != end) {
+            return error(ErrorKind.BAD_STATE_FLAGS, pos);
+        }
+        handler.field((int) x, (int) y, (int) diameter, viewingState, scoringState, ki67State);
+        return NO_ERROR;
+    }
+
+    /**
+     * return the first index in [begin, end) with a char > ' ' i.e. as
+     * String.trim()
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @return
+     */
+    public static int trimBegin(CharSequence paramString, int begin, int end) {
+        while (begin < end && paramString.charAt(begin) <= ' ') {
+            begin++;
+        }
+        return begin;
+    }
+
+    /**
+     * return one past the last index in [begin, end) with a char > ' ' i.e.
+     * as String.trim()
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @return
+     */
+    public static int trimEnd(CharSequence paramString, int begin, int end) {
+        while (end > begin && paramString.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * return index of the next DELIMITER in [begin, end), or end if there is
+     * none
+     *
+     * @param paramString
+     * @param begin
+     * @param end
+     * @return
+     */
+    public static int indexOfDelimiter(CharSequence paramString, int begin, int end) {
+        while (begin < end && paramString.charAt(begin) != DELIMITER) {
+            begin++;
+        }
+        return begin;
+    }
+
+    /**
+     * convert viewing state flag to ViewingState
+     *
+     * @param flag
+     * @return null if flag is not a viewing state flag
+     */
+    public static ViewingState viewingStateOf(char flag) {
+        switch (flag) {
+            case 'c':
+                return ViewingState.CURRENT;
+            case 'p':
+                return ViewingState.PREVIEW;
+            case 'n':
+                return ViewingState.NOT_CURRENT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * convert scoring state flag to ScoringState
+     *
+     * @param flag
+     * @return null if flag is not a scoring state flag
+     */
+    public static ScoringState scoringStateOf(char flag) {
+        switch (flag) {
+            case 'o':
+                return ScoringState.NOT_SCORED;
+            case 'i':
+                return ScoringState.SCORING;
+            case 's':
+                return ScoringState.SCORED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * return offset of error code
+     *
+     * @param error - from scanSelectionCode()
+     * @return
+     */
+    static int errorOffset(long error) {
+        return (int) error;
+    }
+
+    /**
+     * return kind of error code
+     *
+     * @param error - from scanSelectionCode()
+     * @return
+     */
+    static ErrorKind errorKind(long error) {
+        return ErrorKind.values()[(int) (error >>> 32)];
+    }
+
+    /**
+     * error code i.e. kind and offset in one long ... no allocation
+     */
+    private static long error(ErrorKind kind, int offset) {
+        return ((long) kind.ordinal() << 32) | (offset & 0xffffffffL);
+    }
+
+    private static boolean onlyDelimiters(CharSequence paramString, int begin, int end) {
+        for (int i = begin; i < end; i++) {
+            if (paramString.charAt(i) != DELIMITER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * return index just past an optionally signed run of ASCII digits
+     * starting at begin, or -1 if there are no digits
+     */
+    private static int intEnd(CharSequence paramString, int begin, int end) {
+        int pos = begin;
+        if (pos < end && (paramString.charAt(pos) == '-' || paramString.charAt(pos) == '+')) {
+            pos++;
+        }
+        int digitsBegin = pos;
+        while (pos < end && paramString.charAt(pos) >= '0' && paramString.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos == digitsBegin ? -1 : pos;
+    }
+
+    /**
+     * parse an int found by intEnd() ... return NOT_AN_INT on overflow
+     */
+    private static long parseInt(CharSequence paramString, int begin, int end) {
+        boolean negative = paramString.charAt(begin) == '-';
+        int pos = (negative || paramString.charAt(begin) == '+') ? begin + 1 : begin;
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        while (pos < end) {
+            value = value * 10 + (paramString.charAt(pos++) - '0');
+            if (value > limit) {
+                return NOT_AN_INT;
+            }
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * cache of parsed param strings e.g. for the server, which gets the same (or
+ * nearly the same) param string again with every click of every scorer
+ *
+ * a param string is parsed once into an immutable SelectionModel.Snapshot,
+ * shared by everybody asking for the same string.  the fields are interned by
+ * selection text (e.g. "3822x4856y4000pp0no") i.e. a field shared by different
+ * param strings is decoded once and stored once.
+ *
+ * both caches are bounded: least recently used param strings are dropped when
+ * there are more than maxEntries of them or their total length is more than
+ * maxWeight chars, least recently used fields when there are more than
+ * maxSegments of them.
+ *
+ * thread safe ... entries are spread over several independently locked LRU
+ * maps so that threads rarely wait for each other.  parsing is done outside
+ * the locks i.e. two threads missing the same string at once may both parse
+ * it.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionParseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024; // chars
+    public static final int DEFAULT_MAX_SEGMENTS = 100000;
+    private static final int SHARDS = 16; // power of 2
+    private final Shard<String, SelectionModel.Snapshot>[] entries;
+    private final Shard<String, FieldOfView>[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder segmentHitCount = new LongAdder();
+    private final LongAdder segmentMissCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * LRU map of one shard, weight of an entry = length of its key
+     */
+    private static final class Shard<K extends CharSequence, V> {
+
+        private final int maxEntries;
+        private final long maxWeight;
+        private final LongAdder evictionCount; // of the whole cache
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true); // access order
+        private long weight;
+
+        Shard(int maxEntries, long maxWeight, LongAdder evictionCount) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+            this.evictionCount = evictionCount;
+        }
+
+        synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        synchronized V putIfAbsent(K key, V value) {
+            if (key.length() > maxWeight) {
+                return value; // would drop everything else ... not cached
+            }
+            V old = map.putIfAbsent(key, value);
+            if (old != null) {
+                return old;
+            }
+            weight += key.length();
+            Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+            while (map.size() > maxEntries || weight > maxWeight) {
+                weight -= eldest.next().getKey().length();
+                eldest.remove();
+                evictionCount.increment();
+            }
+            return value;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long getWeight() {
+            return weight;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param maxEntries - max number of param strings kept
+     * @param maxWeight - max total length of param strings kept, in chars
+     * @param maxSegments - max number of fields (selections) interned
+     */
+    public FieldSelectionParseCache(int maxEntries, long maxWeight, int maxSegments) {
+        if (maxEntries <= 0 || maxWeight <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("limits must be > 0: " + maxEntries + ", " + maxWeight + ", " + maxSegments);
+        }
+        entries = newShards();
+        segments = newShards();
+        for (int i = 0; i < SHARDS; i++) {
+            entries[i] = new Shard<String, SelectionModel.Snapshot>(
+                    Math.max(1, maxEntries / SHARDS), Math.max(1, maxWeight / SHARDS), evictionCount);
+            segments[i] = new Shard<String, FieldOfView>(Math.max(1, maxSegments / SHARDS), Long.MAX_VALUE, evictionCount);
+        }
+    }
+
+    /**
+     * return array of SHARDS (empty) slots ... no generic array creation in
+     * java
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <K extends CharSequence, V> Shard<K, V>[] newShards() {
+        return new Shard[SHARDS];
+    }
+
+    /**
+     * constructor ... default limits
+     */
+    public FieldSelectionParseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * return selections of paramString, parsed if not cached
+     *
+     * malformed param strings are not cached i.e. the exception thrown is
+     * the same as by the FieldSelectionParamStringParser constructor, every
+     * time
+     *
+     * @param paramString - see FieldSelectionParamStringParser
+     * @return immutable snapshot (version 0), shared with other callers
+     * @throws FieldSelectionParamStringParseException
+     */
+    public SelectionModel.Snapshot parse(String paramString) throws FieldSelectionParamStringParseException {
+        if (paramString == null) {
+            paramString = "";
+        }
+        Shard<String, SelectionModel.Snapshot> shard = entries[shardOf(paramString)];
+        SelectionModel.Snapshot result = shard.get(paramString);
+        if (result != null) {
+            hitCount.increment();
+            return result;
+        }
+        missCount.increment();
+        ArrayList<FieldOfView> fields = parseSegments(paramString);
+        if (fields == null) {
+            // malformed for the scanner ... exactly as the constructor does: throw or parse by split
+            fields = new ArrayList<FieldOfView>(new FieldSelectionParamStringParser(paramString).getAllSelections());
+        }
+        return shard.putIfAbsent(paramString, new SelectionModel.Snapshot(0, fields));
+    }
+
+    /**
+     * drop everything cached ... counts are kept
+     */
+    public void clear() {
+        for (int i = 0; i < SHARDS; i++) {
+            entries[i].clear();
+            segments[i].clear();
+        }
+    }
+
+    /**
+     * return number of param strings cached
+     *
+     * @return
+     */
+    public int size() {
+        int result = 0;
+        for (Shard<String, SelectionModel.Snapshot> shard : entries) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    /**
+     * return total length of param strings cached, in chars
+     *
+     * @return
+     */
+    public long getWeight() {
+        long result = 0;
+        for (Shard<String, SelectionModel.Snapshot> shard : entries) {
+            result += shard.getWeight();
+        }
+        return result;
+    }
+
+    /**
+     * return number of fields interned
+     *
+     * @return
+     */
+    public int getSegmentCount() {
+        int result = 0;
+        for (Shard<String, FieldOfView> shard : segments) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getSegmentHitCount() {
+        return segmentHitCount.sum();
+    }
+
+    public long getSegmentMissCount() {
+        return segmentMissCount.sum();
+    }
+
+    /**
+     * return number of param strings and fields dropped to stay within the
+     * limits
+     *
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * parse paramString selection by selection, using the interned fields
+     *
+     * @return null if paramString is not well formed
+     */
+    private ArrayList<FieldOfView> parseSegments(String paramString) {
+        int end = FieldSelectionParamStringScanner.trimEnd(paramString, 0, paramString.length());
+        int pos = FieldSelectionParamStringScanner.trimBegin(paramString, 0, end);
+        char delimiter = FieldSelectionParamStringParser.DELIMITER.charAt(0);
+        while (end > pos && paramString.charAt(end - 1) == delimiter) {
+            end--; // trailing delimiters are allowed
+        }
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>();
+        FieldOfView[] decoded = new FieldOfView[1];
+        while (pos < end) {
+            int segmentEnd = FieldSelectionParamStringScanner.indexOfDelimiter(paramString, pos, end);
+            if (segmentEnd == pos) {
+                return null; // empty selection
+            }
+            String segment = paramString.substring(pos, segmentEnd);
+            Shard<String, FieldOfView> shard = segments[shardOf(segment)];
+            FieldOfView field = shard.get(segment);
+            if (field != null) {
+                segmentHitCount.increment();
+            } else {
+                segmentMissCount.increment();
+                int error = FieldSelectionParamStringScanner.scanSelection(segment, 0, segment.length(),
+                        (x, y, diameter, viewingState, scoringState, ki67State)
+                        -> decoded[0] = new FrozenFieldOfView(x, y, diameter, viewingState, scoringState, ki67State));
+                if (error != FieldSelectionParamStringScanner.NO_ERROR) {
+                    return null;
+                }
+                field = shard.putIfAbsent(segment, decoded[0]);
+            }
+            result.add(field);
+            pos = segmentEnd + 1;
+        }
+        return result;
+    }
+
+    private static int shardOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (SHARDS - 1);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * result of parsing a param string without exceptions, see
+ * FieldSelectionParamStringParser.tryParse() and validate()
+ *
+ * holds the selections (unless only validated) and the first error i.e. what
+ * is wrong and at which char offset of the param string.  in lenient mode,
+ * malformed selections are skipped and counted; in strict mode, parsing stops
+ * at the first error and no selection is returned.
+ *
+ * the selections accepted are the same as for the
+ * FieldSelectionParamStringParser constructor.  those only accepted by the
+ * rules of its split based fallback (e.g. a stray x or y after the state
+ * flags) are not errors but counted as legacy selections, see
+ * getLegacyCount().
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import java.util.ArrayList;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class FieldSelectionParseResult {
+
+    /**
+     * what is wrong at the error offset
+     */
+    public enum ErrorKind {
+
+        NONE, // no error
+        BAD_X, // no [int]x
+        BAD_Y, // no [int]y after x
+        BAD_DIAMETER, // no [int]pp after y
+        BAD_KI67_LEVEL, // no [int] after pp
+        BAD_STATE_FLAGS, // unexpected char after the Ki67 level
+        NUMBER_OVERFLOW, // number does not fit in an int
+        EMPTY_SELECTION // DELIMITER followed by DELIMITER
+    }
+    private final ArrayList<FieldOfView> selections;
+    private final int fieldCount;
+    private final ErrorKind errorKind;
+    private final int errorOffset;
+    private final int errorCount;
+    private final int legacyCount;
+
+    FieldSelectionParseResult(ArrayList<FieldOfView> selections, int fieldCount, ErrorKind errorKind, int errorOffset, int errorCount, int legacyCount) {
+        this.selections = selections;
+        this.fieldCount = fieldCount;
+        this.errorKind = errorKind;
+        this.errorOffset = errorOffset;
+        this.errorCount = errorCount;
+        this.legacyCount = legacyCount;
+    }
+
+    /**
+     * check if there was no error
+     *
+     * @return
+     */
+    public boolean isValid() {
+        return errorKind == ErrorKind.NONE;
+    }
+
+    /**
+     * human readable description of the first error ... built on request
+     * only
+     *
+     * @return
+     */
+    public String getErrorMessage() {
+        return isValid() ? "" : errorKind + " at offset " + errorOffset
+                + (errorCount > 1 ? " (" + errorCount + " malformed selections)" : "");
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    /**
+     * return selections parsed, null if only validated
+     *
+     * @return
+     */
+    public ArrayList<FieldOfView> getSelections() {
+        return selections;
+    }
+
+    /**
+     * return number of well formed selections (0 if strict and not valid)
+     *
+     * @return
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * return kind of the first error, NONE if none
+     *
+     * @return
+     */
+    public ErrorKind getErrorKind() {
+        return errorKind;
+    }
+
+    /**
+     * return char offset of the first error within the param string, -1 if
+     * none
+     *
+     * @return
+     */
+    public int getErrorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * return number of malformed selections (at most 1 if strict)
+     *
+     * @return
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * return number of selections not well formed but accepted by the split
+     * based rules (included in getFieldCount()) ... a warning, e.g. to find
+     * param strings worth rewriting with FieldSelectionParamStringEncoder
+     *
+     * @return
+     */
+    public int getLegacyCount() {
+        return legacyCount;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        String result = fieldCount + " selections" + (legacyCount > 0 ? " (" + legacyCount + " legacy)" : "");
+        return isValid() ? result : result + ", " + getErrorMessage();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * field that cannot be changed (setters throw UnsupportedOperationException)
+ * i.e. can be shared between threads and between selection lists e.g. by
+ * SelectionModel snapshots and FieldSelectionParseCache
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+
+/**
+ *
+ * @author samuelc
+ */
+final class FrozenFieldOfView extends FieldOfView {
+
+    FrozenFieldOfView(FieldOfView field) {
+        super(field.getX(), field.getY(), field.getDiamter(),
+                field.getViewingState(), field.getScoringState(), field.getKi67State());
+    }
+
+    FrozenFieldOfView(int x, int y, int diameter, ViewingState viewingState, ScoringState scoringState, Ki67State ki67State) {
+        super(x, y, diameter, viewingState, scoringState, ki67State);
+    }
+
+    @Override
+    protected void writeGeometry(int x, int y, int diameter) {
+        throw new UnsupportedOperationException("frozen field cannot be changed");
+    }
+
+    @Override
+    protected void writeStates(ViewingState viewingState, ScoringState scoringState) {
+        throw new UnsupportedOperationException("frozen field cannot be changed");
+    }
+
+    @Override
+    public void addListener(FieldOfViewListener listener) {
+        // never changes ... no need to keep listeners
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * lazy, read only view of the selections of a param string
+ *
+ * the constructor only finds where each selection (segment) begins and ends.
+ * the state flags are the last chars of a segment (see
+ * FieldSelectionParamStringParser), so the viewing/scoring state of a
+ * selection - and with it getCurrentScoringSelection(), getScoredCount() etc. -
+ * is read off those chars without decoding x, y, diameter or Ki67 level.  a
+ * FieldOfView is created only when get() is called for it (then kept, i.e.
+ * get() returns the same object every time).
+ *
+ * NOTE: a selection is checked to be well formed only when it is materialized
+ * i.e. the flag queries of a malformed selection return whatever its last
+ * chars (before any stray trailing y or x, ignored as by the parser) say.  use
+ * validate() to check the whole param string first if needed.
+ *
+ * NOTE: paramString must not change while the view is used.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ *
+ * @author samuelc
+ */
+public class LazySelectionView extends AbstractList<FieldOfView> implements RandomAccess {
+
+    private final CharSequence paramString;
+    private final int[] begins; // of each segment
+    private final int[] ends; // exclusive
+    private final int size;
+    private FieldOfView[] fields; // materialized so far, created on first get()
+
+    /**
+     * constructor ... one pass over paramString to find the selections
+     *
+     * @param paramString - may be null
+     */
+    public LazySelectionView(CharSequence paramString) {
+        this.paramString = paramString == null ? "" : paramString;
+        char delimiter = FieldSelectionParamStringParser.DELIMITER.charAt(0);
+        int end = FieldSelectionParamStringScanner.trimEnd(this.paramString, 0, this.paramString.length());
+        int pos = FieldSelectionParamStringScanner.trimBegin(this.paramString, 0, end);
+        while (end > pos && this.paramString.charAt(end - 1) == delimiter) {
+            end--; // trailing delimiters are allowed
+        }
+        int[] newBegins = new int[16];
+        int[] newEnds = new int[16];
+        int n = 0;
+        while (pos < end) {
+            int segmentEnd = FieldSelectionParamStringScanner.indexOfDelimiter(this.paramString, pos, end);
+            if (n == newBegins.length) {
+                newBegins = Arrays.copyOf(newBegins, n * 2);
+                newEnds = Arrays.copyOf(newEnds, n * 2);
+            }
+            newBegins[n] = pos;
+            newEnds[n] = segmentEnd;
+            n++;
+            pos = segmentEnd + 1;
+        }
+        begins = newBegins;
+        ends = newEnds;
+        size = n;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * return selection, decoded on first call
+     *
+     * @param index
+     * @return
+     * @throws IllegalStateException if the selection is not accepted by the
+     * FieldSelectionParamStringParser constructor
+     */
+    @Override
+    public FieldOfView get(int index) {
+        checkIndex(index);
+        if (fields == null) {
+            fields = new FieldOfView[size];
+        }
+        FieldOfView field = fields[index];
+        if (field == null) {
+            FieldOfView[] decoded = new FieldOfView[1];
+            int error = FieldSelectionParamStringScanner.scanSelection(paramString, begins[index], ends[index],
+                    (x, y, diameter, viewingState, scoringState, ki67State)
+                    -> decoded[0] = new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State));
+            if (error != FieldSelectionParamStringScanner.NO_ERROR) {
+                throw new IllegalStateException("malformed selection at offset " + error + ": " + getSegment(index));
+            }
+            field = decoded[0];
+            fields[index] = field;
+        }
+        return field;
+    }
+
+    /**
+     * return the text of a selection e.g. "3822x4856y4000pp0no"
+     *
+     * @param index
+     * @return
+     */
+    public CharSequence getSegment(int index) {
+        checkIndex(index);
+        return paramString.subSequence(begins[index], ends[index]);
+    }
+
+    /**
+     * return viewing state, read off the flag chars (or from the FieldOfView
+     * if already materialized)
+     *
+     * @param index
+     * @return
+     */
+    public ViewingState getViewingState(int index) {
+        checkIndex(index);
+        if (fields != null && fields[index] != null) {
+            return fields[index].getViewingState();
+        }
+        int begin = begins[index];
+        int end = FieldSelectionParamStringScanner.flagsEnd(paramString, begin, ends[index]);
+        if (end > begin && FieldSelectionParamStringScanner.scoringStateOf(paramString.charAt(end - 1)) != null) {
+            end--; // skip scoring state flag
+        }
+        ViewingState result = end > begin ? FieldSelectionParamStringScanner.viewingStateOf(paramString.charAt(end - 1)) : null;
+        return result == null ? ViewingState.NOT_CURRENT : result; // same default as the parser
+    }
+
+    /**
+     * return scoring state, read off the flag chars (or from the FieldOfView
+     * if already materialized)
+     *
+     * @param index
+     * @return
+     */
+    public ScoringState getScoringState(int index) {
+        checkIndex(index);
+        if (fields != null && fields[index] != null) {
+            return fields[index].getScoringState();
+        }
+        int end = FieldSelectionParamStringScanner.flagsEnd(paramString, begins[index], ends[index]);
+        ScoringState result = end > begins[index] ? FieldSelectionParamStringScanner.scoringStateOf(paramString.charAt(end - 1)) : null;
+        return result == null ? ScoringState.NOT_SCORED : result; // same default as the parser
+    }
+
+    /**
+     * return index of the first CURRENT selection, -1 if none
+     *
+     * @return
+     */
+    public int indexOfCurrentScoringSelection() {
+        for (int i = 0; i < size; i++) {
+            if (getViewingState(i) == ViewingState.CURRENT) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * return current scoring selection (same as
+     * FieldSelectionParamStringParser.getCurrentScoringSelection()), null if
+     * none ... only that selection is decoded
+     *
+     * @return
+     */
+    public FieldOfView getCurrentScoringSelection() {
+        int index = indexOfCurrentScoringSelection();
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * return number of scored selections ... nothing is decoded
+     *
+     * @return
+     */
+    public int getScoredCount() {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            if (getScoringState(i) == ScoringState.SCORED) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * return all scored selections ... only those are decoded
+     *
+     * @return
+     */
+    public ArrayList<FieldOfView> getScoredSelections() {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>();
+        for (int i = 0; i < size; i++) {
+            if (getScoringState(i) == ScoringState.SCORED) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * check the whole param string
+     *
+     * @return
+     */
+    public FieldSelectionParseResult validate() {
+        return FieldSelectionParamStringParser.validate(paramString, false);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
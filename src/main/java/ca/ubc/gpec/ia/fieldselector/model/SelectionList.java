@@ -0,0 +1,603 @@
+/*
+ * list of selections (fields of view) that keeps track of their states
+ *
+ * per ScoringState/ViewingState/Ki67State a BitSet of list positions is kept,
+ * together with the current viewing field, so that e.g. "current field" or
+ * "all scored fields" can be answered without scanning the whole list.
+ *
+ * - state changes of the fields (setScoringState/setViewingState) update the
+ *   index right away through FieldOfViewListener
+ * - adding/removing/replacing fields marks the index as out of date; it is
+ *   rebuilt (once) on the next query.  the list listens to a field from the
+ *   moment it is added until it is removed.
+ *
+ * at most one field is CURRENT: setCurrentViewing() changes the previous
+ * current field(s) to NOT_CURRENT.  the same happens when setViewingState(CURRENT)
+ * is called directly on a field of the list (the index is brought up to date
+ * first if needed).
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ *
+ * @author samuelc
+ */
+public class SelectionList extends ArrayList<FieldOfView> implements FieldOfViewListener {
+
+    private static final long serialVersionUID = 1L;
+    private transient IdentityHashMap<FieldOfView, Integer> positions; // null => index out of date
+    private transient IdentityHashMap<FieldOfView, Integer> members = new IdentityHashMap<FieldOfView, Integer>(); // fields listened to, how many times each is in the list
+    private transient int version; // changes whenever the index changes
+    private transient boolean duplicates; // same FieldOfView more than once in the list
+    private transient BitSet[] scoring;
+    private transient BitSet[] viewing;
+    private transient BitSet[] ki67;
+    private transient int[] scoringCount;
+    private transient int[] viewingCount;
+    private transient int[] ki67Count;
+    private transient FieldOfView current;
+
+    /**
+     * constructor
+     */
+    public SelectionList() {
+        super();
+    }
+
+    /**
+     * constructor
+     *
+     * @param selections
+     */
+    public SelectionList(Collection<? extends FieldOfView> selections) {
+        super(selections);
+        for (FieldOfView field : this) {
+            joined(field);
+        }
+    }
+
+    /**
+     * return copy of the list (the fields themselves are not copied) with
+     * its own index ... the copy listens to its fields too, independent of
+     * this list
+     *
+     * @return
+     */
+    @Override
+    public SelectionList clone() {
+        SelectionList copy = (SelectionList) super.clone();
+        copy.positions = null;
+        copy.members = new IdentityHashMap<FieldOfView, Integer>();
+        copy.version = 0;
+        copy.duplicates = false;
+        copy.scoring = null; // not shared with this list, created on first query
+        copy.viewing = null;
+        copy.ki67 = null;
+        copy.scoringCount = null;
+        copy.viewingCount = null;
+        copy.ki67Count = null;
+        copy.current = null;
+        for (FieldOfView field : copy) {
+            copy.joined(field);
+        }
+        return copy;
+    }
+
+    /**
+     * return current viewing field i.e. ViewingState.CURRENT
+     *
+     * returns null if there is none
+     *
+     * @return
+     */
+    public FieldOfView getCurrentViewing() {
+        ensureIndex();
+        return current;
+    }
+
+    /**
+     * make field the (only) current viewing field ... the previous one becomes
+     * NOT_CURRENT
+     *
+     * @param field - null to have no current viewing field
+     */
+    public void setCurrentViewing(FieldOfView field) {
+        ensureIndex(); // make sure the state changes are tracked
+        if (duplicates) {
+            for (int i = 0; i < size(); i++) {
+                FieldOfView other = get(i);
+                if (other != null && other != field && other.isCurrentViewing()) {
+                    other.setViewingState(ViewingState.NOT_CURRENT);
+                }
+            }
+        } else {
+            BitSet currentBits = viewing[ViewingState.CURRENT.ordinal()];
+            for (int i = currentBits.nextSetBit(0); i >= 0; i = currentBits.nextSetBit(i + 1)) {
+                if (get(i) != field) {
+                    get(i).setViewingState(ViewingState.NOT_CURRENT); // comes back to stateChanged()
+                }
+            }
+        }
+        if (field != null) {
+            field.setViewingState(ViewingState.CURRENT);
+        }
+    }
+
+    /**
+     * number of fields with scoringState
+     *
+     * @param scoringState
+     * @return
+     */
+    public int count(ScoringState scoringState) {
+        ensureIndex();
+        return scoringCount[scoringState.ordinal()];
+    }
+
+    /**
+     * number of fields with viewingState
+     *
+     * @param viewingState
+     * @return
+     */
+    public int count(ViewingState viewingState) {
+        ensureIndex();
+        return viewingCount[viewingState.ordinal()];
+    }
+
+    /**
+     * number of fields with ki67State
+     *
+     * @param ki67State
+     * @return
+     */
+    public int count(Ki67State ki67State) {
+        ensureIndex();
+        return ki67Count[ki67State.ordinal()];
+    }
+
+    /**
+     * live, unmodifiable view of all fields with scoringState, in list order
+     *
+     * @param scoringState
+     * @return
+     */
+    public List<FieldOfView> with(ScoringState scoringState) {
+        int ordinal = scoringState.ordinal();
+        return new StateView() {
+            @Override
+            BitSet bits() {
+                return scoring[ordinal];
+            }
+
+            @Override
+            public int size() {
+                return count(scoringState);
+            }
+        };
+    }
+
+    /**
+     * live, unmodifiable view of all fields with viewingState, in list order
+     *
+     * @param viewingState
+     * @return
+     */
+    public List<FieldOfView> with(ViewingState viewingState) {
+        int ordinal = viewingState.ordinal();
+        return new StateView() {
+            @Override
+            BitSet bits() {
+                return viewing[ordinal];
+            }
+
+            @Override
+            public int size() {
+                return count(viewingState);
+            }
+        };
+    }
+
+    /**
+     * live, unmodifiable view of all fields with ki67State, in list order
+     *
+     * @param ki67State
+     * @return
+     */
+    public List<FieldOfView> with(Ki67State ki67State) {
+        int ordinal = ki67State.ordinal();
+        return new StateView() {
+            @Override
+            BitSet bits() {
+                return ki67[ordinal];
+            }
+
+            @Override
+            public int size() {
+                return count(ki67State);
+            }
+        };
+    }
+
+    @Override
+    public void stateChanged(FieldOfView field, ViewingState oldViewingState, ScoringState oldScoringState) {
+        if (!members.containsKey(field)) {
+            return; // not in list any more
+        }
+        if (positions == null || duplicates) {
+            invalidate(); // index out of date or more than one position to update ... rebuilt on next query
+            if (field.isCurrentViewing()) {
+                setCurrentViewing(field); // rebuilds the index to find the previous current field(s)
+            }
+            return;
+        }
+        int pos = positions.get(field);
+        version++;
+        update(scoring, scoringCount, oldScoringState, field.getScoringState(), pos);
+        update(viewing, viewingCount, oldViewingState, field.getViewingState(), pos);
+        if (field.isCurrentViewing()) {
+            // only one current viewing field ... normally there is only the previous one to change
+            BitSet currentBits = viewing[ViewingState.CURRENT.ordinal()];
+            for (int i = currentBits.nextSetBit(0); i >= 0; i = currentBits.nextSetBit(i + 1)) {
+                if (i != pos) {
+                    get(i).setViewingState(ViewingState.NOT_CURRENT); // comes back to stateChanged()
+                }
+            }
+            current = field;
+        } else if (field == current) {
+            int next = viewing[ViewingState.CURRENT.ordinal()].nextSetBit(0);
+            current = next < 0 ? null : get(next);
+        }
+    }
+
+    ///////////////////////////////////////////////
+    /// structural changes => index out of date ///
+    @Override
+    public boolean add(FieldOfView field) {
+        invalidate();
+        super.add(field);
+        joined(field);
+        return true;
+    }
+
+    @Override
+    public void add(int index, FieldOfView field) {
+        invalidate();
+        super.add(index, field);
+        joined(field);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends FieldOfView> c) {
+        return addAll(size(), c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends FieldOfView> c) {
+        invalidate();
+        Object[] added = c.toArray(); // c may be this list
+        boolean result = super.addAll(index, c);
+        for (Object field : added) {
+            joined((FieldOfView) field);
+        }
+        return result;
+    }
+
+    @Override
+    public FieldOfView set(int index, FieldOfView field) {
+        invalidate();
+        FieldOfView old = super.set(index, field);
+        left(old);
+        joined(field);
+        return old;
+    }
+
+    @Override
+    public FieldOfView remove(int index) {
+        invalidate();
+        FieldOfView removed = super.remove(index);
+        left(removed);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        // FieldOfView.equals() compares values ... need the very object removed
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        invalidate();
+        boolean result = super.removeAll(c);
+        updateMembers();
+        return result;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        invalidate();
+        boolean result = super.retainAll(c);
+        updateMembers();
+        return result;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super FieldOfView> filter) {
+        invalidate();
+        boolean result = super.removeIf(filter);
+        updateMembers();
+        return result;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<FieldOfView> operator) {
+        invalidate();
+        super.replaceAll(operator);
+        updateMembers();
+    }
+
+    @Override
+    public void sort(Comparator<? super FieldOfView> c) {
+        invalidate();
+        super.sort(c);
+    }
+
+    @Override
+    public void clear() {
+        invalidate();
+        super.clear();
+        for (FieldOfView field : members.keySet()) {
+            field.removeListener(this);
+        }
+        members.clear();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        invalidate();
+        super.removeRange(fromIndex, toIndex);
+        updateMembers();
+    }
+
+    /**
+     * ArrayList's own sub list writes to the backing array directly, this one
+     * goes through the methods above
+     */
+    @Override
+    public List<FieldOfView> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return new SubList(fromIndex, toIndex);
+    }
+    /// end of structural changes               ///
+    ///////////////////////////////////////////////
+
+    private void invalidate() {
+        positions = null;
+    }
+
+    /**
+     * field was added ... start listening to it
+     */
+    private void joined(FieldOfView field) {
+        if (field != null && members.merge(field, 1, Integer::sum) == 1) {
+            field.addListener(this);
+        }
+    }
+
+    /**
+     * field was removed ... stop listening to it if it is not in the list
+     * any more
+     */
+    private void left(FieldOfView field) {
+        if (field != null && members.merge(field, -1, Integer::sum) == 0) {
+            members.remove(field);
+            field.removeListener(this);
+        }
+    }
+
+    /**
+     * after a bulk change ... (un)register with the fields added/removed
+     */
+    private void updateMembers() {
+        IdentityHashMap<FieldOfView, Integer> newMembers = new IdentityHashMap<FieldOfView, Integer>(size());
+        for (FieldOfView field : this) {
+            if (field != null) {
+                newMembers.merge(field, 1, Integer::sum);
+            }
+        }
+        for (FieldOfView field : members.keySet()) {
+            if (!newMembers.containsKey(field)) {
+                field.removeListener(this);
+            }
+        }
+        for (FieldOfView field : newMembers.keySet()) {
+            if (!members.containsKey(field)) {
+                field.addListener(this);
+            }
+        }
+        members = newMembers;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        members = new IdentityHashMap<FieldOfView, Integer>();
+        for (FieldOfView field : this) {
+            joined(field);
+        }
+    }
+
+    /**
+     * rebuild index if out of date
+     */
+    private void ensureIndex() {
+        if (positions != null) {
+            return;
+        }
+        if (scoring == null) {
+            scoring = newBitSets(ScoringState.values().length);
+            viewing = newBitSets(ViewingState.values().length);
+            ki67 = newBitSets(Ki67State.values().length);
+            scoringCount = new int[scoring.length];
+            viewingCount = new int[viewing.length];
+            ki67Count = new int[ki67.length];
+        }
+        clear(scoring, scoringCount);
+        clear(viewing, viewingCount);
+        clear(ki67, ki67Count);
+        current = null;
+        duplicates = false;
+        IdentityHashMap<FieldOfView, Integer> newPositions = new IdentityHashMap<FieldOfView, Integer>(size());
+        for (int i = 0; i < size(); i++) {
+            FieldOfView field = get(i);
+            if (field == null) {
+                continue;
+            }
+            if (newPositions.putIfAbsent(field, i) != null) {
+                duplicates = true;
+            }
+            update(scoring, scoringCount, null, field.getScoringState(), i);
+            update(viewing, viewingCount, null, field.getViewingState(), i);
+            update(ki67, ki67Count, null, field.getKi67State(), i);
+            if (current == null && field.isCurrentViewing()) {
+                current = field; // first one, same as scanning the list
+            }
+        }
+        positions = newPositions;
+        version++;
+    }
+
+    private static BitSet[] newBitSets(int n) {
+        BitSet[] bitSets = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            bitSets[i] = new BitSet();
+        }
+        return bitSets;
+    }
+
+    private static void clear(BitSet[] bitSets, int[] counts) {
+        for (int i = 0; i < bitSets.length; i++) {
+            bitSets[i].clear();
+            counts[i] = 0;
+        }
+    }
+
+    private static void update(BitSet[] bitSets, int[] counts, Enum<?> oldState, Enum<?> newState, int pos) {
+        if (oldState == newState) {
+            return;
+        }
+        if (oldState != null) {
+            bitSets[oldState.ordinal()].clear(pos);
+            counts[oldState.ordinal()]--;
+        }
+        if (newState != null) {
+            bitSets[newState.ordinal()].set(pos);
+            counts[newState.ordinal()]++;
+        }
+    }
+
+    /**
+     * unmodifiable view of the fields whose position is set in bits()
+     */
+    private abstract class StateView extends AbstractList<FieldOfView> {
+
+        // last get() ... so that walking the list in order is not quadratic
+        private int lastIndex = -1;
+        private int lastPos = -1;
+        private int lastVersion;
+
+        abstract BitSet bits();
+
+        @Override
+        public FieldOfView get(int index) {
+            Objects.checkIndex(index, size()); // also brings index up to date
+            BitSet bits = bits();
+            int i;
+            int pos;
+            if (lastVersion == version && lastIndex >= 0 && lastIndex <= index) {
+                i = lastIndex;
+                pos = lastPos;
+            } else {
+                i = 0;
+                pos = bits.nextSetBit(0);
+            }
+            while (i < index) {
+                pos = bits.nextSetBit(pos + 1);
+                i++;
+            }
+            lastIndex = i;
+            lastPos = pos;
+            lastVersion = version;
+            return SelectionList.this.get(pos);
+        }
+    }
+
+    /**
+     * sub list going through the methods of SelectionList
+     */
+    private class SubList extends AbstractList<FieldOfView> {
+
+        private final int offset;
+        private int size;
+
+        SubList(int fromIndex, int toIndex) {
+            offset = fromIndex;
+            size = toIndex - fromIndex;
+        }
+
+        @Override
+        public FieldOfView get(int index) {
+            Objects.checkIndex(index, size);
+            return SelectionList.this.get(offset + index);
+        }
+
+        @Override
+        public FieldOfView set(int index, FieldOfView field) {
+            Objects.checkIndex(index, size);
+            return SelectionList.this.set(offset + index, field);
+        }
+
+        @Override
+        public void add(int index, FieldOfView field) {
+            Objects.checkIndex(index, size + 1);
+            SelectionList.this.add(offset + index, field);
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public FieldOfView remove(int index) {
+            Objects.checkIndex(index, size);
+            FieldOfView removed = SelectionList.this.remove(offset + index);
+            size--;
+            modCount++;
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
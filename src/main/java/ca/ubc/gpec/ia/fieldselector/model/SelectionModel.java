@@ -0,0 +1,178 @@
+/*
+ * selections shared between threads e.g. UI thread, renderer, encoder and
+ * server request threads of several sessions
+ *
+ * readers call getSnapshot() and get an immutable Snapshot ... no locking, the
+ * snapshot never changes while it is being read.
+ *
+ * writers call update() with all their changes; the changes are made on a copy
+ * and published as ONE new snapshot (version + 1).  writers are serialized
+ * with each other, but never block readers.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ *
+ * @author samuelc
+ */
+public class SelectionModel {
+
+    private final AtomicReference<Snapshot> snapshot;
+    private final Object writeLock = new Object();
+
+    /**
+     * immutable version of the selections
+     */
+    public static final class Snapshot {
+
+        private final long version;
+        private final List<FieldOfView> selections;
+        private final FieldOfView currentScoringSelection;
+        private final List<FieldOfView> scoredSelections;
+        private volatile String paramString; // created on first use
+
+        Snapshot(long version, List<? extends FieldOfView> fields) {
+            this.version = version;
+            ArrayList<FieldOfView> frozen = new ArrayList<FieldOfView>(fields.size());
+            ArrayList<FieldOfView> scored = new ArrayList<FieldOfView>();
+            FieldOfView current = null;
+            for (FieldOfView field : fields) {
+                FieldOfView copy = field instanceof FrozenFieldOfView ? field : new FrozenFieldOfView(field);
+                frozen.add(copy);
+                if (current == null && copy.isCurrentViewing()) {
+                    current = copy;
+                }
+                if (copy.isScored()) {
+                    scored.add(copy);
+                }
+            }
+            selections = Collections.unmodifiableList(frozen);
+            scoredSelections = Collections.unmodifiableList(scored);
+            currentScoringSelection = current;
+        }
+
+        /**
+         * return version ... increases by one with every update()
+         *
+         * @return
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * return all selections ... neither the list nor the fields can be
+         * changed
+         *
+         * @return
+         */
+        public List<FieldOfView> getAllSelections() {
+            return selections;
+        }
+
+        /**
+         * return current scoring selection, null if none
+         *
+         * @return
+         */
+        public FieldOfView getCurrentScoringSelection() {
+            return currentScoringSelection;
+        }
+
+        /**
+         * return all scored selections
+         *
+         * @return
+         */
+        public List<FieldOfView> getScoredSelections() {
+            return scoredSelections;
+        }
+
+        /**
+         * return the param string of this snapshot (see
+         * FieldSelectionParamStringParser)
+         *
+         * @return
+         */
+        public String getFieldSelectionParamString() {
+            String result = paramString;
+            if (result == null) {
+                result = FieldSelectionParamStringEncoder.encode(selections);
+                paramString = result; // may be done twice by two threads ... same result
+            }
+            return result;
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param selections - copied
+     */
+    public SelectionModel(List<? extends FieldOfView> selections) {
+        snapshot = new AtomicReference<Snapshot>(new Snapshot(0, selections));
+    }
+
+    /**
+     * return the latest snapshot
+     *
+     * @return
+     */
+    public Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * make changes and publish them as one new snapshot
+     *
+     * edits is given a modifiable copy of the latest selections (fields
+     * included) i.e. nobody else sees the changes until edits returns
+     *
+     * @param edits
+     * @return the new snapshot
+     */
+    public Snapshot update(Consumer<SelectionList> edits) {
+        synchronized (writeLock) {
+            Snapshot latest = snapshot.get();
+            SelectionList copy = new SelectionList();
+            for (FieldOfView field : latest.selections) {
+                copy.add(new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                        field.getViewingState(), field.getScoringState(), field.getKi67State()));
+            }
+            edits.accept(copy);
+            Snapshot next = new Snapshot(latest.version + 1, copy);
+            snapshot.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * replace all selections e.g. with a newly parsed param string
+     *
+     * @param selections - copied
+     * @return the new snapshot
+     */
+    public Snapshot replace(List<? extends FieldOfView> selections) {
+        synchronized (writeLock) {
+            Snapshot next = new Snapshot(snapshot.get().version + 1, selections);
+            snapshot.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * apply delta (without checking its sequence number) as one new snapshot
+     *
+     * @param delta
+     * @return the new snapshot
+     */
+    public Snapshot apply(FieldSelectionDelta delta) {
+        return update(delta::apply);
+    }
+}
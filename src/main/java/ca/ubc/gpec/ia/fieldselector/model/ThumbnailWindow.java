@@ -13,6 +13,23 @@ public class ThumbnailWindow {
     private int width; // actual width of thumbnail window
     private int height; // actual width of thumbnail window
     private float scale; // scale between thumbnail and view window
+    private volatile Transforms transforms; // cache, see getTransform()
+
+    /**
+     * transforms to/from THUMBNAIL for one version of the view window ...
+     * immutable, replaced as a whole so that other threads never see it half
+     * filled
+     */
+    private static final class Transforms {
+
+        final ViewWindow.Derived source; // of the view window, identifies its version
+        final CoordinateTransform[] transforms;
+
+        Transforms(ViewWindow.Derived source, CoordinateTransform[] transforms) {
+            this.source = source;
+            this.transforms = transforms;
+        }
+    }
 
     public ThumbnailWindow(ViewWindow viewWindow, int width, int height) {
         this.viewWindow = viewWindow;
@@ -21,6 +38,52 @@ public class ThumbnailWindow {
         scale = ((float) width) / ((float) viewWindow.getImageWidth());
     }
 
+    /**
+     * return transform between two coordinate systems (THUMBNAIL included),
+     * cached until the view window changes
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public CoordinateTransform getTransform(CoordinateTransform.Space from, CoordinateTransform.Space to) {
+        if (from != CoordinateTransform.Space.THUMBNAIL && to != CoordinateTransform.Space.THUMBNAIL) {
+            return viewWindow.getTransform(from, to);
+        }
+        ViewWindow.Derived source = viewWindow.getDerived();
+        Transforms current = transforms;
+        if (current == null || current.source != source) {
+            current = new Transforms(source, createTransforms(source));
+            transforms = current;
+        }
+        return current.transforms[from.ordinal() * CoordinateTransform.Space.values().length + to.ordinal()];
+    }
+
+    /**
+     * return all transforms to/from THUMBNAIL for source
+     */
+    private CoordinateTransform[] createTransforms(ViewWindow.Derived source) {
+        CoordinateTransform.Space[] spaces = CoordinateTransform.Space.values();
+        int thumbnail = CoordinateTransform.Space.THUMBNAIL.ordinal();
+        int preview = CoordinateTransform.Space.PREVIEW.ordinal();
+        // same as projectRealX/Y(), from preview/lowres image
+        CoordinateTransform previewToThumbnail = new CoordinateTransform(
+                CoordinateTransform.Space.PREVIEW, CoordinateTransform.Space.THUMBNAIL,
+                scale, viewWindow.getPanelWidth() - width, scale, 0);
+        CoordinateTransform thumbnailToPreview = previewToThumbnail.inverse();
+        CoordinateTransform[] result = new CoordinateTransform[spaces.length * spaces.length];
+        for (CoordinateTransform.Space space : spaces) {
+            int i = space.ordinal();
+            if (space == CoordinateTransform.Space.THUMBNAIL) {
+                result[thumbnail * spaces.length + thumbnail] = CoordinateTransform.identity(space);
+            } else {
+                result[thumbnail * spaces.length + i] = thumbnailToPreview.compose(source.transforms[preview * spaces.length + i]);
+                result[i * spaces.length + thumbnail] = source.transforms[i * spaces.length + preview].compose(previewToThumbnail);
+            }
+        }
+        return result;
+    }
+
     /**
      * return thumbnail width
      *
@@ -72,4 +135,34 @@ public class ThumbnailWindow {
         int thumbnailRealBaseY = 0;
         return Math.round(thumbnailRealBaseY + imageY * scale);
     }
+
+    /**
+     * bulk version of projectRealX()
+     *
+     * @param imageX
+     * @param realX - output, may be the same array as imageX
+     * @param length - number of coordinates to project
+     */
+    public void projectRealX(int[] imageX, int[] realX, int length) {
+        final int thumbnailRealBaseX = viewWindow.getPanelWidth() - width;
+        final float thumbnailScale = scale;
+        for (int i = 0; i < length; i++) {
+            realX[i] = Math.round(thumbnailRealBaseX + imageX[i] * thumbnailScale);
+        }
+    }
+
+    /**
+     * bulk version of projectRealY()
+     *
+     * @param imageY
+     * @param realY - output, may be the same array as imageY
+     * @param length - number of coordinates to project
+     */
+    public void projectRealY(int[] imageY, int[] realY, int length) {
+        final int thumbnailRealBaseY = 0;
+        final float thumbnailScale = scale;
+        for (int i = 0; i < length; i++) {
+            realY[i] = Math.round(thumbnailRealBaseY + imageY[i] * thumbnailScale);
+        }
+    }
 }
@@ -9,6 +9,13 @@
  */
 package ca.ubc.gpec.ia.fieldselector.model;
 
+import ca.ubc.gpec.ia.fieldselector.metrics.Probes;
+import ca.ubc.gpec.ia.fieldselector.metrics.ViewportEvent;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  *
  * @author Samuel
@@ -34,6 +41,17 @@ public class ViewWindow {
     private final float minZoomMagnification; // max zoom-in 
     private final float scaleToOriginal; // a scaling factor (>1) that scales the coordinate system back to that of the original image
     // this would be the ratio between the preview/lowres image and the original image.
+    private int version; // increased whenever x/y/magnification may have changed
+    private volatile Derived derived; // for version, see update()
+    // what needs to be repainted since clearDirtyRegions() (panel coordinates)
+    private boolean fullRepaint = true;
+    private final ArrayList<Rectangle> dirtyRegions = new ArrayList<Rectangle>();
+    private int scrollDX; // existing content needs to be copied by scrollDX/scrollDY
+    private int scrollDY;
+    private double panX; // exact (not rounded) amount moved in view pixel since last full repaint
+    private double panY;
+    private int blittedX; // rounded amount moved since last full repaint i.e. sum of all scrollDX
+    private int blittedY;
 
     public ViewWindow(int x, int y, int width, int height, int imageWidth, int imageHeight, float magnification, float scaleToOriginal) {
         this.x = x;
@@ -56,6 +74,32 @@ public class ViewWindow {
 
         // max zoom-in
         minZoomMagnification = ZOOM_MIN;
+
+        update();
+    }
+
+    /**
+     * values computed from x/y/magnification ... immutable, replaced as a
+     * whole by update() so that other threads (e.g. BatchSnapshotRenderer)
+     * never see them half updated
+     */
+    static final class Derived {
+
+        final int version;
+        final int originalX;
+        final int originalY;
+        final int originalX2;
+        final int originalY2;
+        final CoordinateTransform[] transforms; // see getTransform(), no THUMBNAIL
+
+        Derived(int version, int originalX, int originalY, int originalX2, int originalY2, CoordinateTransform[] transforms) {
+            this.version = version;
+            this.originalX = originalX;
+            this.originalY = originalY;
+            this.originalX2 = originalX2;
+            this.originalY2 = originalY2;
+            this.transforms = transforms;
+        }
     }
 
     /**
@@ -84,6 +128,10 @@ public class ViewWindow {
      * @param delta = number of mouse click
      */
     public void changeMagnification(float delta) {
+        ViewportEvent event = Probes.beginViewport();
+        int oldX = x;
+        int oldY = y;
+        float oldMagnification = magnification;
 
         // capture centre point of view window BEFORE magnification change
         int midX = (getX2() - x) / 2 + x;
@@ -108,6 +156,13 @@ public class ViewWindow {
         if (getY2() > imageHeight) {
             y = imageHeight - Math.round((float) viewableHeight / magnification);
         }
+        if (x != oldX || y != oldY || magnification != oldMagnification) {
+            // everything moves by a different amount ... nothing to copy
+            fullRepaint = true;
+        }
+        version++;
+        update();
+        Probes.endViewport(event, ViewportEvent.ZOOM, magnification, x, y);
     }
 
     /**
@@ -241,7 +296,7 @@ public class ViewWindow {
      * @return
      */
     public int getOriginalX() {
-        return Math.round((float) x * scaleToOriginal);
+        return derived.originalX;
     }
 
     /**
@@ -250,7 +305,7 @@ public class ViewWindow {
      * @return
      */
     public int getOriginalY() {
-        return Math.round((float) y * scaleToOriginal);
+        return derived.originalY;
     }
 
     /**
@@ -259,7 +314,7 @@ public class ViewWindow {
      * @return
      */
     public int getOriginalX2() {
-        return Math.round((float) getX2() * scaleToOriginal);
+        return derived.originalX2;
     }
 
     /**
@@ -268,7 +323,7 @@ public class ViewWindow {
      * @return
      */
     public int getOriginalY2() {
-        return Math.round((float) getY2() * scaleToOriginal);
+        return derived.originalY2;
     }
 
     /**
@@ -314,6 +369,9 @@ public class ViewWindow {
     /**
      * project real X coordinate to view coordinate
      *
+     * NOTE: relative to the viewable area i.e. without viewableXOffset, unlike
+     * projectRealX() and getTransform(PREVIEW, VIEW)
+     *
      * @param realX
      * @return
      */
@@ -324,6 +382,9 @@ public class ViewWindow {
     /**
      * project real Y coordinate to view coordinate
      *
+     * NOTE: relative to the viewable area i.e. without viewableYOffset, unlike
+     * projectRealY() and getTransform(PREVIEW, VIEW)
+     *
      * @param realY
      * @return
      */
@@ -341,6 +402,120 @@ public class ViewWindow {
         return Math.round((float) realLength * magnification);
     }
 
+    /**
+     * bulk version of projectOriginalX()
+     *
+     * NOTE: fields are read once for the whole array; keeps the same float
+     * division as the single value version so that the results are exactly the
+     * same (multiplying by 1/magnification would not be)
+     *
+     * @param viewX
+     * @param originalX - output, may be the same array as viewX
+     * @param length - number of coordinates to project
+     */
+    public void projectOriginalX(int[] viewX, int[] originalX, int length) {
+        final int realBase = x;
+        final float offset = viewableXOffset;
+        final float mag = magnification;
+        final float scale = scaleToOriginal;
+        for (int i = 0; i < length; i++) {
+            originalX[i] = Math.round((float) (realBase + Math.round((viewX[i] - offset) / mag)) * scale);
+        }
+    }
+
+    /**
+     * bulk version of projectOriginalY()
+     *
+     * @param viewY
+     * @param originalY - output, may be the same array as viewY
+     * @param length - number of coordinates to project
+     */
+    public void projectOriginalY(int[] viewY, int[] originalY, int length) {
+        final int realBase = y;
+        final float offset = viewableYOffset;
+        final float mag = magnification;
+        final float scale = scaleToOriginal;
+        for (int i = 0; i < length; i++) {
+            originalY[i] = Math.round((float) (realBase + Math.round((viewY[i] - offset) / mag)) * scale);
+        }
+    }
+
+    /**
+     * bulk version of projectRealX()
+     *
+     * @param viewX
+     * @param realX - output, may be the same array as viewX
+     * @param length - number of coordinates to project
+     */
+    public void projectRealX(int[] viewX, int[] realX, int length) {
+        final int realBase = x;
+        final float offset = viewableXOffset;
+        final float mag = magnification;
+        for (int i = 0; i < length; i++) {
+            realX[i] = realBase + Math.round((viewX[i] - offset) / mag);
+        }
+    }
+
+    /**
+     * bulk version of projectRealY()
+     *
+     * @param viewY
+     * @param realY - output, may be the same array as viewY
+     * @param length - number of coordinates to project
+     */
+    public void projectRealY(int[] viewY, int[] realY, int length) {
+        final int realBase = y;
+        final float offset = viewableYOffset;
+        final float mag = magnification;
+        for (int i = 0; i < length; i++) {
+            realY[i] = realBase + Math.round((viewY[i] - offset) / mag);
+        }
+    }
+
+    /**
+     * bulk version of projectViewX()
+     *
+     * @param realX
+     * @param viewX - output, may be the same array as realX
+     * @param length - number of coordinates to project
+     */
+    public void projectViewX(int[] realX, int[] viewX, int length) {
+        final int realBase = x;
+        final float mag = magnification;
+        for (int i = 0; i < length; i++) {
+            viewX[i] = Math.round((float) (realX[i] - realBase) * mag);
+        }
+    }
+
+    /**
+     * bulk version of projectViewY()
+     *
+     * @param realY
+     * @param viewY - output, may be the same array as realY
+     * @param length - number of coordinates to project
+     */
+    public void projectViewY(int[] realY, int[] viewY, int length) {
+        final int realBase = y;
+        final float mag = magnification;
+        for (int i = 0; i < length; i++) {
+            viewY[i] = Math.round((float) (realY[i] - realBase) * mag);
+        }
+    }
+
+    /**
+     * bulk version of projectViewLength()
+     *
+     * @param realLength
+     * @param viewLength - output, may be the same array as realLength
+     * @param length - number of lengths to project
+     */
+    public void projectViewLength(int[] realLength, int[] viewLength, int length) {
+        final float mag = magnification;
+        for (int i = 0; i < length; i++) {
+            viewLength[i] = Math.round((float) realLength[i] * mag);
+        }
+    }
+
     /**
      * move
      *
@@ -348,11 +523,215 @@ public class ViewWindow {
      * @param dY - in view coordinate
      */
     public void move(int dX, int dY) {
+        ViewportEvent event = Probes.beginViewport();
+        int oldX = x;
+        int oldY = y;
         x = Math.min(
                 imageWidth - Math.round((float) viewableWidth / magnification),
                 Math.max(0, x + Math.round((float) dX / magnification)));
         y = Math.min(
                 imageHeight - Math.round((float) viewableHeight / magnification),
                 Math.max(0, y + Math.round((float) dY / magnification)));
+        if (x != oldX || y != oldY) {
+            addScroll(oldX - x, oldY - y);
+        }
+        version++;
+        update();
+        Probes.endViewport(event, ViewportEvent.MOVE, magnification, x, y);
+    }
+
+    /**
+     * check if the whole panel needs to be repainted e.g. after zooming
+     *
+     * @return
+     */
+    public boolean isFullRepaintNeeded() {
+        return fullRepaint;
+    }
+
+    /**
+     * return amount in X direction (panel pixel) the content painted before
+     * needs to be copied by (e.g. Graphics.copyArea) ... only valid if
+     * isFullRepaintNeeded() is false
+     *
+     * @return
+     */
+    public int getScrollDX() {
+        return scrollDX;
+    }
+
+    /**
+     * return amount in Y direction (panel pixel) the content painted before
+     * needs to be copied by ... only valid if isFullRepaintNeeded() is false
+     *
+     * @return
+     */
+    public int getScrollDY() {
+        return scrollDY;
+    }
+
+    /**
+     * return regions (panel coordinates) not covered by the copied content
+     * i.e. the image and the field overlays intersecting them need to be
+     * painted ... only valid if isFullRepaintNeeded() is false
+     *
+     * @return
+     */
+    public List<Rectangle> getDirtyRegions() {
+        return Collections.unmodifiableList(dirtyRegions);
+    }
+
+    /**
+     * call after painting ... everything is up to date
+     */
+    public void clearDirtyRegions() {
+        if (fullRepaint) {
+            panX = 0;
+            panY = 0;
+            blittedX = 0;
+            blittedY = 0;
+        }
+        fullRepaint = false;
+        dirtyRegions.clear();
+        scrollDX = 0;
+        scrollDY = 0;
+    }
+
+    /**
+     * record that x/y moved by realDX/realDY (preview/lowres image pixel)
+     *
+     * NOTE: unless magnification is a whole number, a move is not a whole
+     * number of panel pixels.  the copy amount is rounded from the total
+     * amount moved since the last full repaint so that the copied content is
+     * always off by less than one pixel, however often the user pans.
+     */
+    private void addScroll(int realDX, int realDY) {
+        if (fullRepaint) {
+            return; // painting everything anyway
+        }
+        panX += (double) realDX * magnification;
+        panY += (double) realDY * magnification;
+        int dX = (int) Math.round(panX) - blittedX;
+        int dY = (int) Math.round(panY) - blittedY;
+        blittedX += dX;
+        blittedY += dY;
+        if (Math.abs(scrollDX + dX) >= viewableWidth || Math.abs(scrollDY + dY) >= viewableHeight) {
+            fullRepaint = true; // nothing left to copy
+            dirtyRegions.clear();
+            return;
+        }
+        scrollDX += dX;
+        scrollDY += dY;
+        Rectangle viewable = new Rectangle(viewableXOffset, viewableYOffset, viewableWidth, viewableHeight);
+        // regions not painted yet move with the content
+        for (int i = dirtyRegions.size() - 1; i >= 0; i--) {
+            Rectangle region = dirtyRegions.get(i);
+            region.translate(dX, dY);
+            Rectangle clipped = region.intersection(viewable);
+            if (clipped.isEmpty()) {
+                dirtyRegions.remove(i);
+            } else {
+                region.setBounds(clipped);
+            }
+        }
+        // strips uncovered by this move
+        if (dX > 0) {
+            dirtyRegions.add(new Rectangle(viewableXOffset, viewableYOffset, dX, viewableHeight));
+        } else if (dX < 0) {
+            dirtyRegions.add(new Rectangle(viewableXOffset + viewableWidth + dX, viewableYOffset, -dX, viewableHeight));
+        }
+        if (dY > 0) {
+            dirtyRegions.add(new Rectangle(viewableXOffset, viewableYOffset, viewableWidth, dY));
+        } else if (dY < 0) {
+            dirtyRegions.add(new Rectangle(viewableXOffset, viewableYOffset + viewableHeight + dY, viewableWidth, -dY));
+        }
+    }
+
+    /**
+     * return version ... changes whenever move() or changeMagnification() is
+     * called i.e. anything computed from this view window with the same version
+     * is still valid
+     *
+     * @return
+     */
+    public int getVersion() {
+        return derived.version;
+    }
+
+    /**
+     * return transform between two coordinate systems, computed whenever the
+     * view window changes (see getVersion())
+     *
+     * VIEW is panel pixel i.e. with the viewable offset, see
+     * CoordinateTransform.  for THUMBNAIL, see ThumbnailWindow.getTransform()
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public CoordinateTransform getTransform(CoordinateTransform.Space from, CoordinateTransform.Space to) {
+        if (from == CoordinateTransform.Space.THUMBNAIL || to == CoordinateTransform.Space.THUMBNAIL) {
+            throw new IllegalArgumentException("thumbnail coordinates are known to ThumbnailWindow only");
+        }
+        return derived.transforms[from.ordinal() * CoordinateTransform.Space.values().length + to.ordinal()];
+    }
+
+    /**
+     * return derived values of the current version
+     *
+     * @return
+     */
+    Derived getDerived() {
+        return derived;
+    }
+
+    /**
+     * return transform from preview/lowres image to space
+     */
+    private CoordinateTransform fromPreview(CoordinateTransform.Space space) {
+        switch (space) {
+            case ORIGINAL:
+                return new CoordinateTransform(CoordinateTransform.Space.PREVIEW, space,
+                        scaleToOriginal, 0, scaleToOriginal, 0);
+            case VIEW:
+                // inverse of projectRealX/Y() i.e. panel pixel, with the viewable offset
+                return new CoordinateTransform(CoordinateTransform.Space.PREVIEW, space,
+                        magnification, viewableXOffset - (double) x * magnification,
+                        magnification, viewableYOffset - (double) y * magnification);
+            default:
+                return CoordinateTransform.identity(CoordinateTransform.Space.PREVIEW);
+        }
+    }
+
+    /**
+     * compute getOriginalX/Y/X2/Y2() (needed for every field in inView()
+     * checks) and the transforms once per version ... call whenever
+     * x/y/magnification change
+     */
+    private void update() {
+        CoordinateTransform.Space[] spaces = CoordinateTransform.Space.values();
+        CoordinateTransform[] fromPreview = new CoordinateTransform[spaces.length];
+        CoordinateTransform[] toPreview = new CoordinateTransform[spaces.length];
+        for (CoordinateTransform.Space space : spaces) {
+            if (space != CoordinateTransform.Space.THUMBNAIL) {
+                fromPreview[space.ordinal()] = fromPreview(space);
+                toPreview[space.ordinal()] = fromPreview[space.ordinal()].inverse();
+            }
+        }
+        CoordinateTransform[] transforms = new CoordinateTransform[spaces.length * spaces.length];
+        for (CoordinateTransform.Space from : spaces) {
+            for (CoordinateTransform.Space to : spaces) {
+                if (from != CoordinateTransform.Space.THUMBNAIL && to != CoordinateTransform.Space.THUMBNAIL) {
+                    // go through the preview/lowres image
+                    transforms[from.ordinal() * spaces.length + to.ordinal()] = toPreview[from.ordinal()].compose(fromPreview[to.ordinal()]);
+                }
+            }
+        }
+        derived = new Derived(version,
+                Math.round((float) x * scaleToOriginal),
+                Math.round((float) y * scaleToOriginal),
+                Math.round((float) getX2() * scaleToOriginal),
+                Math.round((float) getY2() * scaleToOriginal),
+                transforms);
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * render many SnapshotJob (e.g. all slides of a nightly QA run) to png files,
+ * in parallel
+ *
+ * - fixed number of worker threads; submit() blocks (runs the job on the
+ *   caller) when too many jobs are waiting i.e. memory use stays bounded
+ * - each worker reuses its image buffer as long as the panel size stays the
+ *   same; jobs run on other threads use a buffer of their own, freed when the
+ *   job is done
+ * - once closed, submit() throws RejectedExecutionException
+ * - the png is encoded straight into the file (written to a temporary file
+ *   first, then renamed, so that a half written file is never seen)
+ */
+package ca.ubc.gpec.ia.fieldselector.render;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ *
+ * @author samuelc
+ */
+public class BatchSnapshotRenderer implements AutoCloseable {
+
+    public static final String FORMAT = "png";
+    private final OverlayRenderer renderer;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * worker thread, owns the image buffer reused across jobs
+     */
+    private static final class Worker extends Thread {
+
+        private final BatchSnapshotRenderer owner;
+        private BufferedImage buffer;
+
+        Worker(BatchSnapshotRenderer owner, Runnable task, String name) {
+            super(task, name);
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * run job on the caller when too many are waiting, reject once closed
+     * (CallerRunsPolicy would silently drop the job, its Future would never
+     * complete)
+     */
+    private static final class Overflow implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("renderer closed");
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param renderer
+     * @param threads - number of worker threads
+     * @param maxQueued - max number of jobs waiting for a worker
+     */
+    public BatchSnapshotRenderer(OverlayRenderer renderer, int threads, int maxQueued) {
+        this.renderer = renderer;
+        ThreadFactory workers = new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable task) {
+                return new Worker(BatchSnapshotRenderer.this, task, "snapshot-renderer-" + (++count));
+            }
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueued), workers, new Overflow());
+    }
+
+    /**
+     * constructor ... one worker per processor
+     *
+     * @param renderer
+     */
+    public BatchSnapshotRenderer(OverlayRenderer renderer) {
+        this(renderer, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * render job in the background
+     *
+     * @param job
+     * @return the output file when done
+     * @throws RejectedExecutionException if closed
+     */
+    public Future<File> submit(SnapshotJob job) {
+        return executor.submit(() -> render(job));
+    }
+
+    /**
+     * render all jobs and wait for them
+     *
+     * @param jobs
+     * @return jobs that failed, in order, with why (empty if all succeeded)
+     * @throws InterruptedException
+     * @throws RejectedExecutionException if closed
+     */
+    public Map<SnapshotJob, Throwable> renderAll(List<SnapshotJob> jobs) throws InterruptedException {
+        ArrayList<Future<File>> futures = new ArrayList<Future<File>>(jobs.size());
+        for (SnapshotJob job : jobs) {
+            futures.add(submit(job));
+        }
+        LinkedHashMap<SnapshotJob, Throwable> failed = new LinkedHashMap<SnapshotJob, Throwable>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                failed.put(jobs.get(i), e.getCause());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * render job on the calling thread
+     *
+     * @param job
+     * @return the output file
+     * @throws IOException
+     */
+    public File render(SnapshotJob job) throws IOException {
+        BufferedImage image = buffer(job.getViewWindow().getPanelWidth(), job.getViewWindow().getPanelHeight());
+        Graphics2D g = image.createGraphics();
+        try {
+            renderer.render(g, job.getViewWindow(), job.getSelections(), job.getMessages(),
+                    job.getThumbnailWindow(), job.getPreview());
+        } finally {
+            g.dispose();
+        }
+        File output = job.getOutput();
+        File temp = new File(output.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp.toPath()))) {
+            if (!ImageIO.write(image, FORMAT, out)) {
+                throw new IOException("no image writer for " + FORMAT);
+            }
+        }
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return output;
+    }
+
+    /**
+     * stop accepting jobs (see submit()) and wait for the submitted ones,
+     * worker buffers are freed with the workers ... if interrupted
+     * while waiting, the jobs not done yet are cancelled and the interrupt
+     * flag is set again
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * return image buffer of this worker, (re)created if the size does not
+     * match ... any other thread (caller of render(), overflow of submit())
+     * gets a new one i.e. nothing is kept on threads not owned here.
+     * render() paints every pixel i.e. no need to clear
+     */
+    private BufferedImage buffer(int width, int height) {
+        Thread thread = Thread.currentThread();
+        if (!(thread instanceof Worker) || ((Worker) thread).owner != this) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Worker worker = (Worker) thread;
+        if (worker.buffer == null || worker.buffer.getWidth() != width || worker.buffer.getHeight() != height) {
+            worker.buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        return worker.buffer;
+    }
+}
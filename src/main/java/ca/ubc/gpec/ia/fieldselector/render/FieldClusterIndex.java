@@ -0,0 +1,328 @@
+/*
+ * level of detail for drawing field overlays when zoomed out
+ *
+ * fields that would be drawn smaller than minFieldPixels are grouped into
+ * clusters i.e. squares of about clusterPixels screen pixel, each drawn once
+ * with its count and dominant Ki67State.  bigger fields are drawn one by one as
+ * usual.  either way, the work per frame depends on the panel size, not on the
+ * number of fields.
+ *
+ * zoom levels are grouped into buckets (powers of 2 of original image pixels
+ * per screen pixel).  the clusters of a bucket are computed the first time it
+ * is drawn and then kept up to date as fields are added, removed or moved.
+ * the clusters are anchored to the original image i.e. panning needs no
+ * recomputing.
+ *
+ * the index listens to the fields added to it ... call close() when done with
+ * it, otherwise the fields keep it (and all its clusters) reachable.
+ */
+package ca.ubc.gpec.ia.fieldselector.render;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfViewGridIndex;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfViewListener;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldClusterIndex implements FieldOfViewListener, AutoCloseable {
+
+    public static final int DEFAULT_CLUSTER_PIXELS = 32; // size of a cluster in screen pixel
+    public static final int DEFAULT_MIN_FIELD_PIXELS = 8; // fields at least this big (screen pixel) are not clustered
+    private final int clusterPixels;
+    private final int minFieldPixels;
+    private final IdentityHashMap<FieldOfView, FieldOfView> fields; // used as identity set
+    private final HashMap<Integer, Bucket> buckets; // computed so far, by zoom bucket
+
+    /**
+     * a group of fields close to each other on screen
+     */
+    public static final class Cluster {
+
+        private long sumX;
+        private long sumY;
+        private int count;
+        private final int[] ki67Counts = new int[Ki67State.values().length];
+
+        /**
+         * return x of the centre of the fields (original image coordinates)
+         *
+         * @return
+         */
+        public int getX() {
+            return (int) Math.round((double) sumX / count);
+        }
+
+        /**
+         * return y of the centre of the fields (original image coordinates)
+         *
+         * @return
+         */
+        public int getY() {
+            return (int) Math.round((double) sumY / count);
+        }
+
+        /**
+         * return number of fields
+         *
+         * @return
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * return number of fields with ki67State
+         *
+         * @param ki67State
+         * @return
+         */
+        public int getCount(Ki67State ki67State) {
+            return ki67Counts[ki67State.ordinal()];
+        }
+
+        /**
+         * return the most common Ki67State ... the higher one on a tie
+         *
+         * @return
+         */
+        public Ki67State getDominantKi67State() {
+            int best = 0;
+            for (int i = 1; i < ki67Counts.length; i++) {
+                if (ki67Counts[i] >= ki67Counts[best]) {
+                    best = i;
+                }
+            }
+            return Ki67State.values()[best];
+        }
+
+        private void add(FieldOfView field, int x, int y, int sign) {
+            sumX += sign * (long) x;
+            sumY += sign * (long) y;
+            count += sign;
+            if (field.getKi67State() != null) {
+                ki67Counts[field.getKi67State().ordinal()] += sign;
+            }
+        }
+    }
+
+    /**
+     * clusters of one zoom bucket
+     */
+    private final class Bucket {
+
+        private final double scale; // original image pixel per screen pixel
+        private final int cellSize; // in original image pixel
+        private final HashMap<Long, Cluster> clusters = new HashMap<Long, Cluster>();
+        private final FieldOfViewGridIndex individual = new FieldOfViewGridIndex(FieldOfViewGridIndex.DEFAULT_CELL_SIZE);
+
+        Bucket(int bucket) {
+            scale = Math.pow(2, bucket);
+            cellSize = (int) Math.max(1, Math.min(1 << 30, Math.round(clusterPixels * scale)));
+            for (FieldOfView field : fields.keySet()) {
+                add(field, field.getX(), field.getY(), field.getDiamter(), 1);
+            }
+        }
+
+        /**
+         * add (sign 1) or remove (sign -1) field with the given geometry
+         */
+        void add(FieldOfView field, int x, int y, int diameter, int sign) {
+            if (Math.abs((double) diameter) / scale >= minFieldPixels) {
+                if (sign > 0) {
+                    individual.add(field);
+                } else {
+                    individual.remove(field);
+                }
+                return;
+            }
+            Long key = key(Math.floorDiv(x, cellSize), Math.floorDiv(y, cellSize));
+            Cluster cluster = clusters.get(key);
+            if (cluster == null) {
+                cluster = new Cluster();
+                clusters.put(key, cluster);
+            }
+            cluster.add(field, x, y, sign);
+            if (cluster.count == 0) {
+                clusters.remove(key);
+            }
+        }
+    }
+
+    /**
+     * constructor
+     *
+     * @param clusterPixels - size of a cluster in screen pixel
+     * @param minFieldPixels - fields at least this big (screen pixel) are
+     * drawn one by one
+     */
+    public FieldClusterIndex(int clusterPixels, int minFieldPixels) {
+        if (clusterPixels <= 0) {
+            throw new IllegalArgumentException("clusterPixels must be > 0: " + clusterPixels);
+        }
+        this.clusterPixels = clusterPixels;
+        this.minFieldPixels = minFieldPixels;
+        fields = new IdentityHashMap<FieldOfView, FieldOfView>();
+        buckets = new HashMap<Integer, Bucket>();
+    }
+
+    /**
+     * constructor
+     *
+     * @param selections
+     */
+    public FieldClusterIndex(List<? extends FieldOfView> selections) {
+        this(DEFAULT_CLUSTER_PIXELS, DEFAULT_MIN_FIELD_PIXELS);
+        for (FieldOfView field : selections) {
+            add(field);
+        }
+    }
+
+    /**
+     * add field ... does nothing if already added
+     *
+     * @param field
+     */
+    public void add(FieldOfView field) {
+        if (fields.put(field, field) != null) {
+            return;
+        }
+        for (Bucket bucket : buckets.values()) {
+            bucket.add(field, field.getX(), field.getY(), field.getDiamter(), 1);
+        }
+        field.addListener(this);
+    }
+
+    /**
+     * remove field
+     *
+     * @param field
+     * @return false if field was not added
+     */
+    public boolean remove(FieldOfView field) {
+        if (fields.remove(field) == null) {
+            return false;
+        }
+        for (Bucket bucket : buckets.values()) {
+            bucket.add(field, field.getX(), field.getY(), field.getDiamter(), -1);
+        }
+        field.removeListener(this);
+        return true;
+    }
+
+    /**
+     * number of fields
+     *
+     * @return
+     */
+    public int size() {
+        return fields.size();
+    }
+
+    /**
+     * return size of a cluster in screen pixel
+     *
+     * @return
+     */
+    public int getClusterPixels() {
+        return clusterPixels;
+    }
+
+    /**
+     * return zoom bucket of viewWindow
+     *
+     * @param viewWindow
+     * @return
+     */
+    public static int bucketOf(ViewWindow viewWindow) {
+        double originalPerScreen = viewWindow.getScaleToOriginal() / viewWindow.getMagnification();
+        return (int) Math.floor(Math.log(originalPerScreen) / Math.log(2));
+    }
+
+    /**
+     * find what to draw for viewWindow
+     *
+     * @param viewWindow
+     * @param clusters - clusters in view are added to it
+     * @param individual - fields in view that are big enough to be drawn one
+     * by one are added to it
+     */
+    public void inView(ViewWindow viewWindow, Collection<? super Cluster> clusters, Collection<? super FieldOfView> individual) {
+        Bucket bucket = buckets.get(bucketOf(viewWindow));
+        if (bucket == null) {
+            bucket = new Bucket(bucketOf(viewWindow));
+            buckets.put(bucketOf(viewWindow), bucket);
+        }
+        bucket.individual.inView(viewWindow, individual);
+        long minCol = Math.floorDiv(viewWindow.getOriginalX(), bucket.cellSize);
+        long maxCol = Math.floorDiv(viewWindow.getOriginalX2(), bucket.cellSize);
+        long minRow = Math.floorDiv(viewWindow.getOriginalY(), bucket.cellSize);
+        long maxRow = Math.floorDiv(viewWindow.getOriginalY2(), bucket.cellSize);
+        if ((maxCol - minCol + 1) * (maxRow - minRow + 1) > bucket.clusters.size()) {
+            // fewer clusters than cells in view
+            for (Map.Entry<Long, Cluster> entry : bucket.clusters.entrySet()) {
+                long col = entry.getKey() >> 32;
+                long row = (int) (long) entry.getKey();
+                if (col >= minCol && col <= maxCol && row >= minRow && row <= maxRow) {
+                    clusters.add(entry.getValue());
+                }
+            }
+            return;
+        }
+        for (long row = minRow; row <= maxRow; row++) {
+            for (long col = minCol; col <= maxCol; col++) {
+                Cluster cluster = bucket.clusters.get(key((int) col, (int) row));
+                if (cluster != null) {
+                    clusters.add(cluster);
+                }
+            }
+        }
+    }
+
+    /**
+     * drop all computed clusters e.g. to free memory ... they are computed
+     * again when needed
+     */
+    public void clearCache() {
+        for (Bucket bucket : buckets.values()) {
+            bucket.individual.clear();
+        }
+        buckets.clear();
+    }
+
+    /**
+     * remove all fields i.e. stop listening to them ... the index is empty
+     * afterwards
+     */
+    @Override
+    public void close() {
+        for (FieldOfView field : fields.keySet()) {
+            field.removeListener(this);
+        }
+        fields.clear();
+        clearCache();
+    }
+
+    @Override
+    public void geometryChanged(FieldOfView field, int oldX, int oldY, int oldDiameter) {
+        if (!fields.containsKey(field)) {
+            return;
+        }
+        for (Bucket bucket : buckets.values()) {
+            bucket.add(field, oldX, oldY, oldDiameter, -1);
+            bucket.add(field, field.getX(), field.getY(), field.getDiamter(), 1);
+        }
+    }
+
+    private static Long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
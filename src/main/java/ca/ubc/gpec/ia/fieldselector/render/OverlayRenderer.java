@@ -0,0 +1,229 @@
+/*
+ * draw a ViewWindow with its field overlays into any Graphics2D e.g. of a
+ * BufferedImage i.e. no display needed (run with -Djava.awt.headless=true on
+ * servers)
+ *
+ * what is drawn:
+ * 1. the preview/lowres image (if given) within the viewable area
+ * 2. the fields in view, coloured by Ki67State ... the current field is
+ *    highlighted, scored fields are filled
+ * 3. the text messages
+ * 4. the thumbnail (if given) with the fields and the view window outline
+ */
+package ca.ubc.gpec.ia.fieldselector.render;
+
+import ca.ubc.gpec.ia.fieldselector.metrics.CullingEvent;
+import ca.ubc.gpec.ia.fieldselector.metrics.Probes;
+import ca.ubc.gpec.ia.fieldselector.model.CoordinateTransform;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.TextMessage;
+import ca.ubc.gpec.ia.fieldselector.model.ThumbnailWindow;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class OverlayRenderer {
+
+    public static final Color BACKGROUND_COLOR = Color.BLACK;
+    public static final Color CURRENT_COLOR = Color.CYAN;
+    public static final Color VIEW_OUTLINE_COLOR = Color.YELLOW;
+    public static final float SCORED_FILL_ALPHA = 0.3f;
+    public static final int CLUSTER_MIN_PIXELS = 4; // diameter of a cluster of 1 field
+    private final Color[] ki67Colors; // by Ki67State.ordinal()
+
+    /**
+     * constructor ... default colours
+     */
+    public OverlayRenderer() {
+        ki67Colors = new Color[Ki67State.values().length];
+        ki67Colors[Ki67State.NEGLIGIBLE.ordinal()] = Color.GRAY;
+        ki67Colors[Ki67State.LOW.ordinal()] = Color.GREEN;
+        ki67Colors[Ki67State.MEDIUM.ordinal()] = Color.ORANGE;
+        ki67Colors[Ki67State.HIGH.ordinal()] = Color.RED;
+        ki67Colors[Ki67State.HOT_SPOT.ordinal()] = Color.MAGENTA;
+    }
+
+    /**
+     * set colour of fields with ki67State
+     *
+     * @param ki67State
+     * @param color
+     */
+    public void setColor(Ki67State ki67State, Color color) {
+        ki67Colors[ki67State.ordinal()] = color;
+    }
+
+    /**
+     * return colour of fields with ki67State
+     *
+     * @param ki67State
+     * @return
+     */
+    public Color getColor(Ki67State ki67State) {
+        return ki67State == null ? Color.WHITE : ki67Colors[ki67State.ordinal()];
+    }
+
+    /**
+     * draw everything
+     *
+     * @param g - e.g. of an image of panelWidth x panelHeight
+     * @param viewWindow
+     * @param selections
+     * @param messages - may be null
+     * @param thumbnailWindow - may be null
+     * @param preview - the preview/lowres image, may be null
+     */
+    public void render(Graphics2D g, ViewWindow viewWindow, List<? extends FieldOfView> selections,
+            List<TextMessage> messages, ThumbnailWindow thumbnailWindow, BufferedImage preview) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(BACKGROUND_COLOR);
+        g.fillRect(0, 0, viewWindow.getPanelWidth(), viewWindow.getPanelHeight());
+        int offsetX = viewableXOffset(viewWindow);
+        int offsetY = viewableYOffset(viewWindow);
+        if (preview != null) {
+            g.drawImage(preview,
+                    offsetX, offsetY, offsetX + viewWindow.getWidth(), offsetY + viewWindow.getHeight(),
+                    viewWindow.getX(), viewWindow.getY(), viewWindow.getX2(), viewWindow.getY2(), null);
+        }
+        renderFields(g, viewWindow, selections);
+        if (messages != null) {
+            for (TextMessage message : messages) {
+                g.setColor(message.getColor());
+                g.drawString(message.getMessage(), offsetX + message.getX(), offsetY + message.getY());
+            }
+        }
+        if (thumbnailWindow != null) {
+            renderThumbnail(g, viewWindow, thumbnailWindow, selections, preview);
+        }
+    }
+
+    /**
+     * draw the fields in view
+     *
+     * @param g
+     * @param viewWindow
+     * @param selections
+     */
+    public void renderFields(Graphics2D g, ViewWindow viewWindow, List<? extends FieldOfView> selections) {
+        CullingEvent event = Probes.beginCulling();
+        CoordinateTransform toView = viewWindow.getTransform(CoordinateTransform.Space.ORIGINAL, CoordinateTransform.Space.VIEW);
+        FieldOfView current = null;
+        int visible = 0;
+        g.setStroke(new BasicStroke(1));
+        for (FieldOfView field : selections) {
+            if (!field.inView(viewWindow)) {
+                continue;
+            }
+            visible++;
+            if (field.isCurrentViewing()) {
+                current = field; // drawn last i.e. on top
+                continue;
+            }
+            drawField(g, toView, field, getColor(field.getKi67State()));
+        }
+        if (current != null) {
+            g.setStroke(new BasicStroke(3));
+            drawField(g, toView, current, CURRENT_COLOR);
+            g.setStroke(new BasicStroke(1));
+        }
+        Probes.endCulling(event, Probes.SOURCE_RENDERER, selections.size(), visible);
+    }
+
+    /**
+     * draw the fields in view with level of detail i.e. small fields as
+     * clusters (see FieldClusterIndex)
+     *
+     * @param g
+     * @param viewWindow
+     * @param clusterIndex
+     */
+    public void renderFields(Graphics2D g, ViewWindow viewWindow, FieldClusterIndex clusterIndex) {
+        ArrayList<FieldClusterIndex.Cluster> clusters = new ArrayList<FieldClusterIndex.Cluster>();
+        ArrayList<FieldOfView> individual = new ArrayList<FieldOfView>();
+        clusterIndex.inView(viewWindow, clusters, individual);
+        CoordinateTransform toView = viewWindow.getTransform(CoordinateTransform.Space.ORIGINAL, CoordinateTransform.Space.VIEW);
+        for (FieldClusterIndex.Cluster cluster : clusters) {
+            // bigger for more fields, but never bigger than a cluster
+            int diameter = Math.min(clusterIndex.getClusterPixels(),
+                    CLUSTER_MIN_PIXELS + 2 * (31 - Integer.numberOfLeadingZeros(cluster.getCount())));
+            int x = toView.roundX(cluster.getX());
+            int y = toView.roundY(cluster.getY());
+            g.setColor(getColor(cluster.getDominantKi67State()));
+            g.fillOval(x - diameter / 2, y - diameter / 2, diameter, diameter);
+            if (cluster.getCount() > 1) {
+                g.setColor(Color.WHITE);
+                g.drawString(Integer.toString(cluster.getCount()), x + diameter / 2 + 1, y);
+            }
+        }
+        renderFields(g, viewWindow, individual);
+    }
+
+    /**
+     * draw the thumbnail in the top right corner of the panel
+     *
+     * @param g
+     * @param viewWindow
+     * @param thumbnailWindow
+     * @param selections
+     * @param preview - may be null
+     */
+    public void renderThumbnail(Graphics2D g, ViewWindow viewWindow, ThumbnailWindow thumbnailWindow,
+            List<? extends FieldOfView> selections, BufferedImage preview) {
+        int left = thumbnailWindow.projectRealX(0);
+        int top = thumbnailWindow.projectRealY(0);
+        if (preview != null) {
+            g.drawImage(preview, left, top, thumbnailWindow.getWidth(), thumbnailWindow.getHeight(), null);
+        } else {
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(left, top, thumbnailWindow.getWidth(), thumbnailWindow.getHeight());
+        }
+        CoordinateTransform toThumbnail = thumbnailWindow.getTransform(CoordinateTransform.Space.ORIGINAL, CoordinateTransform.Space.THUMBNAIL);
+        for (FieldOfView field : selections) {
+            g.setColor(field.isCurrentViewing() ? CURRENT_COLOR : getColor(field.getKi67State()));
+            g.fillRect(toThumbnail.roundX(field.getX()) - 1, toThumbnail.roundY(field.getY()) - 1, 3, 3);
+        }
+        // where the view window is
+        int x = thumbnailWindow.projectRealX(viewWindow.getX());
+        int y = thumbnailWindow.projectRealY(viewWindow.getY());
+        g.setColor(VIEW_OUTLINE_COLOR);
+        g.drawRect(x, y, thumbnailWindow.projectRealX(viewWindow.getX2()) - x, thumbnailWindow.projectRealY(viewWindow.getY2()) - y);
+        g.drawRect(left, top, thumbnailWindow.getWidth() - 1, thumbnailWindow.getHeight() - 1);
+    }
+
+    private void drawField(Graphics2D g, CoordinateTransform toView, FieldOfView field, Color color) {
+        int diameter = (int) Math.round(toView.scaleLength(Math.abs(field.getDiamter())));
+        int x = toView.roundX(field.getX()) - diameter / 2;
+        int y = toView.roundY(field.getY()) - diameter / 2;
+        g.setColor(color);
+        if (field.isScored()) {
+            Composite composite = g.getComposite();
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, SCORED_FILL_ALPHA));
+            g.fillOval(x, y, diameter, diameter);
+            g.setComposite(composite);
+        }
+        g.drawOval(x, y, diameter, diameter);
+    }
+
+    /**
+     * same as ViewWindow i.e. (panelWidth - viewableWidth)/2
+     */
+    private static int viewableXOffset(ViewWindow viewWindow) {
+        return Math.round((float) (viewWindow.getPanelWidth() - viewWindow.getWidth()) / 2f);
+    }
+
+    private static int viewableYOffset(ViewWindow viewWindow) {
+        return Math.round((float) (viewWindow.getPanelHeight() - viewWindow.getHeight()) / 2f);
+    }
+}
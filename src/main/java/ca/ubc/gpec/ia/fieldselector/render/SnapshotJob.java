@@ -0,0 +1,77 @@
+/*
+ * one snapshot to be rendered by BatchSnapshotRenderer i.e. one slide
+ */
+package ca.ubc.gpec.ia.fieldselector.render;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView;
+import ca.ubc.gpec.ia.fieldselector.model.TextMessage;
+import ca.ubc.gpec.ia.fieldselector.model.ThumbnailWindow;
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+/**
+ *
+ * @author samuelc
+ */
+public class SnapshotJob {
+
+    private final ViewWindow viewWindow;
+    private final List<? extends FieldOfView> selections;
+    private final List<TextMessage> messages;
+    private final ThumbnailWindow thumbnailWindow;
+    private final BufferedImage preview;
+    private final File output;
+
+    /**
+     * constructor
+     *
+     * NOTE: the job is rendered on another thread ... do not change
+     * viewWindow/selections until it is done
+     *
+     * @param viewWindow
+     * @param selections
+     * @param messages - may be null
+     * @param thumbnailWindow - may be null
+     * @param preview - preview/lowres image, may be null
+     * @param output - png file to write
+     */
+    public SnapshotJob(ViewWindow viewWindow, List<? extends FieldOfView> selections, List<TextMessage> messages,
+            ThumbnailWindow thumbnailWindow, BufferedImage preview, File output) {
+        this.viewWindow = viewWindow;
+        this.selections = selections;
+        this.messages = messages;
+        this.thumbnailWindow = thumbnailWindow;
+        this.preview = preview;
+        this.output = output;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public ViewWindow getViewWindow() {
+        return viewWindow;
+    }
+
+    public List<? extends FieldOfView> getSelections() {
+        return selections;
+    }
+
+    public List<TextMessage> getMessages() {
+        return messages;
+    }
+
+    public ThumbnailWindow getThumbnailWindow() {
+        return thumbnailWindow;
+    }
+
+    public BufferedImage getPreview() {
+        return preview;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+}
@@ -0,0 +1,99 @@
+/*
+ * TileSource reading tiles from local image files e.g. for testing
+ *
+ * directory layout:
+ * [directory]/[level]/[col]_[row].[format]
+ *
+ * e.g. tiles/0/12_7.png
+ *
+ * every level is half the size of the previous one (downsample 1, 2, 4 ...).
+ */
+package ca.ubc.gpec.ia.fieldselector.tile;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FileTileSource implements TileSource {
+
+    private final File directory;
+    private final String format;
+    private final int tileSize;
+    private final int levelCount;
+    private final int width; // of level 0 i.e. original image
+    private final int height;
+
+    /**
+     * constructor
+     *
+     * @param directory
+     * @param format - file name extension e.g. png, jpg
+     * @param tileSize
+     * @param levelCount
+     * @param width - width of original image
+     * @param height - height of original image
+     */
+    public FileTileSource(File directory, String format, int tileSize, int levelCount, int width, int height) {
+        if (tileSize <= 0 || levelCount <= 0 || levelCount > 31) {
+            throw new IllegalArgumentException("invalid tile size/level count: " + tileSize + "/" + levelCount);
+        }
+        this.directory = directory;
+        this.format = format;
+        this.tileSize = tileSize;
+        this.levelCount = levelCount;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    @Override
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    @Override
+    public double getLevelDownsample(int level) {
+        return 1 << level;
+    }
+
+    @Override
+    public int getLevelWidth(int level) {
+        return (int) Math.ceil((double) width / (1 << level));
+    }
+
+    @Override
+    public int getLevelHeight(int level) {
+        return (int) Math.ceil((double) height / (1 << level));
+    }
+
+    /**
+     * return file of a tile
+     *
+     * @param level
+     * @param col
+     * @param row
+     * @return
+     */
+    public File getTileFile(int level, int col, int row) {
+        return new File(new File(directory, Integer.toString(level)), col + "_" + row + "." + format);
+    }
+
+    @Override
+    public BufferedImage readTile(int level, int col, int row) throws IOException {
+        File file = getTileFile(level, col, row);
+        BufferedImage result = ImageIO.read(file);
+        if (result == null) {
+            throw new IOException("unable to read tile: " + file);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * bounded cache of decoded tiles ... when full, the least recently used tile
+ * is dropped
+ *
+ * thread safe i.e. prefetch threads can put() while the UI thread get()s
+ */
+package ca.ubc.gpec.ia.fieldselector.tile;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author samuelc
+ */
+public class TileCache {
+
+    private final int capacity;
+    private final LinkedHashMap<TileKey, BufferedImage> tiles;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * constructor
+     *
+     * @param capacity - max number of tiles kept
+     */
+    public TileCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        this.capacity = capacity;
+        // access order i.e. get() makes a tile the most recently used one
+        tiles = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+                return size() > TileCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * return tile, null if not cached
+     *
+     * @param key
+     * @return
+     */
+    public synchronized BufferedImage get(TileKey key) {
+        BufferedImage result = tiles.get(key);
+        if (result == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return result;
+    }
+
+    /**
+     * add tile ... may drop the least recently used tile
+     *
+     * @param key
+     * @param tile
+     */
+    public synchronized void put(TileKey key, BufferedImage tile) {
+        tiles.put(key, tile);
+    }
+
+    /**
+     * check if tile is cached, without making it the most recently used one
+     *
+     * @param key
+     * @return
+     */
+    public synchronized boolean contains(TileKey key) {
+        return tiles.containsKey(key);
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * identifies a tile of an image pyramid (see TileSource)
+ */
+package ca.ubc.gpec.ia.fieldselector.tile;
+
+/**
+ *
+ * @author samuelc
+ */
+public final class TileKey {
+
+    private final int level;
+    private final int col;
+    private final int row;
+
+    /**
+     * constructor
+     *
+     * @param level
+     * @param col
+     * @param row
+     */
+    public TileKey(int level, int col, int row) {
+        this.level = level;
+        this.col = col;
+        this.row = row;
+    }
+
+    ///////////////////////////////////////////////
+    /// getters                                 ///
+    public int getLevel() {
+        return level;
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getRow() {
+        return row;
+    }
+    /// end of getters                          ///
+    ///////////////////////////////////////////////
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TileKey)) {
+            return false;
+        }
+        TileKey k = (TileKey) obj;
+        return level == k.level && col == k.col && row == k.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return (level * 31 + col) * 31 + row;
+    }
+
+    @Override
+    public String toString() {
+        return level + "/" + col + "_" + row;
+    }
+}
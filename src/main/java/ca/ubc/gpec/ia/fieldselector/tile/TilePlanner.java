@@ -0,0 +1,290 @@
+/*
+ * work out which tiles of an image pyramid (see TileSource) are needed to paint
+ * a ViewWindow, keep them in a TileCache and load the tiles the user is
+ * panning towards before they become visible.
+ *
+ * usage (UI thread):
+ * 1. after every move()/changeMagnification() of the view window, call
+ *    update(viewWindow) ... returns the tiles to paint and starts prefetching
+ * 2. paint with getTile() (loads if not prefetched yet) or getCachedTile()
+ *
+ * the level is chosen so that a tile pixel is never bigger than a screen
+ * pixel i.e. the smallest level that still has enough detail.
+ */
+package ca.ubc.gpec.ia.fieldselector.tile;
+
+import ca.ubc.gpec.ia.fieldselector.model.ViewWindow;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ *
+ * @author samuelc
+ */
+public class TilePlanner {
+
+    public static final int DEFAULT_PREFETCH_DEPTH = 1; // number of tile rows/cols to load ahead
+    private final TileSource source;
+    private final TileCache cache;
+    private final Executor prefetchExecutor; // null => no prefetch
+    private final int prefetchDepth;
+    private final Set<TileKey> loading; // prefetches not finished yet
+    // state of the last update()
+    private int lastVersion;
+    private ViewWindow lastViewWindow;
+    private float lastMagnification;
+    private int lastOriginalX;
+    private int lastOriginalY;
+    private int directionX; // -1, 0, 1 ... direction of the last move
+    private int directionY;
+    private List<TileKey> lastPlan;
+
+    /**
+     * constructor
+     *
+     * @param source
+     * @param cacheCapacity - max number of decoded tiles kept
+     * @param prefetchExecutor - runs the prefetches, null for no prefetching
+     * @param prefetchDepth - number of tile rows/cols to load ahead
+     */
+    public TilePlanner(TileSource source, int cacheCapacity, Executor prefetchExecutor, int prefetchDepth) {
+        this.source = source;
+        this.cache = new TileCache(cacheCapacity);
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchDepth = prefetchDepth;
+        loading = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * constructor
+     *
+     * @param source
+     * @param cacheCapacity - max number of decoded tiles kept
+     * @param prefetchExecutor - runs the prefetches, null for no prefetching
+     */
+    public TilePlanner(TileSource source, int cacheCapacity, Executor prefetchExecutor) {
+        this(source, cacheCapacity, prefetchExecutor, DEFAULT_PREFETCH_DEPTH);
+    }
+
+    /**
+     * return level to paint viewWindow with
+     *
+     * @param viewWindow
+     * @return
+     */
+    public int chooseLevel(ViewWindow viewWindow) {
+        // original image pixels per screen pixel
+        double originalPerScreen = viewWindow.getScaleToOriginal() / viewWindow.getMagnification();
+        int result = 0;
+        for (int level = 1; level < source.getLevelCount(); level++) {
+            if (source.getLevelDownsample(level) <= originalPerScreen) {
+                result = level;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * return tiles needed to paint viewWindow, row by row
+     *
+     * @param viewWindow
+     * @return
+     */
+    public List<TileKey> plan(ViewWindow viewWindow) {
+        int level = chooseLevel(viewWindow);
+        int[] range = tileRange(level, viewWindow);
+        ArrayList<TileKey> result = new ArrayList<TileKey>();
+        for (int row = range[1]; row <= range[3]; row++) {
+            for (int col = range[0]; col <= range[2]; col++) {
+                result.add(new TileKey(level, col, row));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * return tiles just outside viewWindow in the direction of the last
+     * move() (see update()), nearest first
+     *
+     * @param viewWindow
+     * @return
+     */
+    public List<TileKey> planPrefetch(ViewWindow viewWindow) {
+        ArrayList<TileKey> result = new ArrayList<TileKey>();
+        if (directionX == 0 && directionY == 0) {
+            return result;
+        }
+        int level = chooseLevel(viewWindow);
+        int[] range = tileRange(level, viewWindow);
+        if (range[0] > range[2] || range[1] > range[3]) {
+            return result; // nothing visible
+        }
+        int maxCol = tileCount(source.getLevelWidth(level)) - 1;
+        int maxRow = tileCount(source.getLevelHeight(level)) - 1;
+        for (int step = 1; step <= prefetchDepth; step++) {
+            // visible range moved step tiles ahead ... only the tiles not visible/planned yet
+            int minC = range[0] + Math.min(0, directionX * step);
+            int maxC = range[2] + Math.max(0, directionX * step);
+            int minR = range[1] + Math.min(0, directionY * step);
+            int maxR = range[3] + Math.max(0, directionY * step);
+            for (int row = Math.max(0, minR); row <= Math.min(maxRow, maxR); row++) {
+                for (int col = Math.max(0, minC); col <= Math.min(maxCol, maxC); col++) {
+                    boolean previousRing = col >= range[0] + Math.min(0, directionX * (step - 1))
+                            && col <= range[2] + Math.max(0, directionX * (step - 1))
+                            && row >= range[1] + Math.min(0, directionY * (step - 1))
+                            && row <= range[3] + Math.max(0, directionY * (step - 1));
+                    if (!previousRing) {
+                        result.add(new TileKey(level, col, row));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * call after every change of viewWindow ... records the pan direction and
+     * starts prefetching
+     *
+     * @param viewWindow
+     * @return tiles needed to paint viewWindow (see plan())
+     */
+    public List<TileKey> update(ViewWindow viewWindow) {
+        if (viewWindow == lastViewWindow && viewWindow.getVersion() == lastVersion && lastPlan != null) {
+            return lastPlan;
+        }
+        if (viewWindow == lastViewWindow && viewWindow.getMagnification() == lastMagnification) {
+            int dX = viewWindow.getOriginalX() - lastOriginalX;
+            int dY = viewWindow.getOriginalY() - lastOriginalY;
+            if (dX != 0 || dY != 0) {
+                directionX = Integer.signum(dX);
+                directionY = Integer.signum(dY);
+            }
+        } else {
+            directionX = 0; // zoomed ... no direction
+            directionY = 0;
+        }
+        lastViewWindow = viewWindow;
+        lastVersion = viewWindow.getVersion();
+        lastMagnification = viewWindow.getMagnification();
+        lastOriginalX = viewWindow.getOriginalX();
+        lastOriginalY = viewWindow.getOriginalY();
+        lastPlan = plan(viewWindow);
+        prefetch(planPrefetch(viewWindow), cache.getCapacity() - lastPlan.size());
+        return lastPlan;
+    }
+
+    /**
+     * return tile, loaded from source if not cached
+     *
+     * @param key
+     * @return
+     * @throws IOException
+     */
+    public BufferedImage getTile(TileKey key) throws IOException {
+        BufferedImage result = cache.get(key);
+        if (result == null) {
+            result = source.readTile(key.getLevel(), key.getCol(), key.getRow());
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * return tile if cached, null otherwise (e.g. to paint a lower level
+     * instead while it is loading)
+     *
+     * @param key
+     * @return
+     */
+    public BufferedImage getCachedTile(TileKey key) {
+        return cache.get(key);
+    }
+
+    /**
+     * return x of tile in original image coordinates
+     *
+     * @param key
+     * @return
+     */
+    public int getOriginalX(TileKey key) {
+        return (int) Math.round((double) key.getCol() * source.getTileSize() * source.getLevelDownsample(key.getLevel()));
+    }
+
+    /**
+     * return y of tile in original image coordinates
+     *
+     * @param key
+     * @return
+     */
+    public int getOriginalY(TileKey key) {
+        return (int) Math.round((double) key.getRow() * source.getTileSize() * source.getLevelDownsample(key.getLevel()));
+    }
+
+    public TileCache getCache() {
+        return cache;
+    }
+
+    public TileSource getSource() {
+        return source;
+    }
+
+    /**
+     * load tiles in the background, at most max of them (so that prefetching
+     * never pushes the visible tiles out of the cache)
+     */
+    private void prefetch(List<TileKey> keys, int max) {
+        if (prefetchExecutor == null) {
+            return;
+        }
+        int count = 0;
+        for (TileKey key : keys) {
+            if (count >= max) {
+                return;
+            }
+            if (cache.contains(key) || !loading.add(key)) {
+                continue; // already there/on its way
+            }
+            count++;
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        cache.put(key, source.readTile(key.getLevel(), key.getCol(), key.getRow()));
+                    } catch (IOException e) {
+                        // ignore ... getTile() tries again and reports the error if the tile is needed
+                    } finally {
+                        loading.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loading.remove(key); // executor busy/shut down ... prefetching is optional
+                return;
+            }
+        }
+    }
+
+    /**
+     * return {minCol, minRow, maxCol, maxRow} of the tiles of level covering
+     * viewWindow ... min > max if none
+     */
+    private int[] tileRange(int level, ViewWindow viewWindow) {
+        double tileOriginalSize = source.getTileSize() * source.getLevelDownsample(level);
+        int maxCol = tileCount(source.getLevelWidth(level)) - 1;
+        int maxRow = tileCount(source.getLevelHeight(level)) - 1;
+        return new int[]{
+            Math.max(0, (int) Math.floor(viewWindow.getOriginalX() / tileOriginalSize)),
+            Math.max(0, (int) Math.floor(viewWindow.getOriginalY() / tileOriginalSize)),
+            Math.min(maxCol, (int) Math.floor((viewWindow.getOriginalX2() - 1) / tileOriginalSize)),
+            Math.min(maxRow, (int) Math.floor((viewWindow.getOriginalY2() - 1) / tileOriginalSize))};
+    }
+
+    private int tileCount(int levelSize) {
+        return (levelSize + source.getTileSize() - 1) / source.getTileSize();
+    }
+}
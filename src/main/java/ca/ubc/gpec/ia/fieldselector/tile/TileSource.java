@@ -0,0 +1,68 @@
+/*
+ * where the tiles of an image pyramid come from e.g. local files, a tile server
+ *
+ * level 0 is the original image (see ViewWindow), every further level is
+ * smaller by getLevelDownsample(level).  each level is cut into square tiles
+ * of getTileSize() pixel, tiles at the right/bottom edge may be smaller.
+ */
+package ca.ubc.gpec.ia.fieldselector.tile;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ *
+ * @author samuelc
+ */
+public interface TileSource {
+
+    /**
+     * return width/height of a tile in pixel
+     *
+     * @return
+     */
+    int getTileSize();
+
+    /**
+     * return number of levels
+     *
+     * @return
+     */
+    int getLevelCount();
+
+    /**
+     * return number of original image pixels per pixel of level e.g. 1 for
+     * level 0
+     *
+     * @param level
+     * @return
+     */
+    double getLevelDownsample(int level);
+
+    /**
+     * return width of level in pixel
+     *
+     * @param level
+     * @return
+     */
+    int getLevelWidth(int level);
+
+    /**
+     * return height of level in pixel
+     *
+     * @param level
+     * @return
+     */
+    int getLevelHeight(int level);
+
+    /**
+     * read (decode) a tile ... may be called from several threads at once
+     *
+     * @param level
+     * @param col
+     * @param row
+     * @return
+     * @throws IOException
+     */
+    BufferedImage readTile(int level, int col, int row) throws IOException;
+}
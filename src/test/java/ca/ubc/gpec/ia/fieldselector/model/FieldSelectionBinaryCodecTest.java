@@ -0,0 +1,95 @@
+/*
+ * binary and URL safe formats must give back the selections they were
+ * encoded from, and damaged data must be reported, not decoded into garbage
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionBinaryCodecTest {
+
+    @Test
+    public void testRoundTrip() throws FieldSelectionParamStringParseException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(50));
+            String expected = SelectionFixtures.describe(selections);
+            assertEquals(expected, SelectionFixtures.describe(FieldSelectionBinaryCodec.decode(FieldSelectionBinaryCodec.encode(selections))));
+            String urlSafe = FieldSelectionBinaryCodec.encodeUrlSafe(selections);
+            assertEquals(expected, SelectionFixtures.describe(FieldSelectionBinaryCodec.decodeUrlSafe(urlSafe)), urlSafe);
+        }
+    }
+
+    @Test
+    public void testUrlSafe() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 100; i++) {
+            String urlSafe = FieldSelectionBinaryCodec.encodeUrlSafe(SelectionFixtures.randomSelections(random, random.nextInt(50)));
+            assertTrue(FieldSelectionBinaryCodec.isUrlSafeEncoded(urlSafe), urlSafe);
+            assertTrue(urlSafe.matches("[A-Za-z0-9_~-]*"), urlSafe);
+        }
+    }
+
+    @Test
+    public void testDecodeAnyFormat() throws FieldSelectionParamStringParseException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 100; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(50));
+            String text = FieldSelectionParamStringEncoder.encode(selections);
+            assertFalse(FieldSelectionBinaryCodec.isUrlSafeEncoded(text), text);
+            String expected = SelectionFixtures.describe(selections);
+            assertEquals(expected, SelectionFixtures.describe(FieldSelectionBinaryCodec.decodeAnyFormat(text).getAllSelections()));
+            assertEquals(expected, SelectionFixtures.describe(
+                    FieldSelectionBinaryCodec.decodeAnyFormat(FieldSelectionBinaryCodec.encodeUrlSafe(selections)).getAllSelections()));
+        }
+        assertEquals(0, FieldSelectionBinaryCodec.decodeAnyFormat(null).getAllSelections().size());
+    }
+
+    @Test
+    public void testTruncated() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = FieldSelectionBinaryCodec.encode(SelectionFixtures.randomSelections(random, random.nextInt(50)));
+            for (int length = 0; length < bytes.length; length++) {
+                byte[] truncated = Arrays.copyOf(bytes, length);
+                assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionBinaryCodec.decode(truncated));
+            }
+            byte[] extra = Arrays.copyOf(bytes, bytes.length + 1);
+            assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionBinaryCodec.decode(extra));
+        }
+    }
+
+    @Test
+    public void testDamaged() {
+        byte[] bytes = FieldSelectionBinaryCodec.encode(SelectionFixtures.randomSelections(new Random(SelectionFixtures.SEED), 10));
+        byte[] version = bytes.clone();
+        version[0] = FieldSelectionBinaryCodec.VERSION + 1;
+        assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionBinaryCodec.decode(version));
+        assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionBinaryCodec.decodeUrlSafe("~1%%%"));
+        assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionBinaryCodec.decodeUrlSafe("1x2y3pp0no"));
+        // random bytes must never escape as anything but a parse exception
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 10000; i++) {
+            byte[] damaged = bytes.clone();
+            damaged[random.nextInt(damaged.length)] = (byte) random.nextInt(256);
+            try {
+                FieldSelectionBinaryCodec.decode(damaged);
+            } catch (FieldSelectionParamStringParseException e) {
+                // expected for most
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * applying the delta computed between two selection lists to the first one
+ * must give the second one, also after going through the delta string
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionDeltaTest {
+
+    // apply() appends added fields i.e. the order is not kept ... compare by location
+    private static final Comparator<FieldOfView> BY_LOCATION = Comparator.comparingInt(FieldOfView::getX)
+            .thenComparingInt(FieldOfView::getY).thenComparingInt(FieldOfView::getDiamter);
+
+    @Test
+    public void testApply() throws FieldSelectionParamStringParseException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> before = SelectionFixtures.randomSelections(random, random.nextInt(30));
+            ArrayList<FieldOfView> after = change(random, before);
+            FieldSelectionDelta delta = FieldSelectionDelta.compute(i, before, after);
+
+            ArrayList<FieldOfView> applied = SelectionFixtures.copyOf(before);
+            delta.apply(applied);
+            assertEquals(sorted(after), sorted(applied), delta.encode());
+
+            // through the delta string
+            FieldSelectionDelta parsed = FieldSelectionDelta.parse(delta.encode());
+            assertEquals(i, parsed.getSequence());
+            assertEquals(delta.encode(), parsed.encode());
+            applied = SelectionFixtures.copyOf(before);
+            parsed.apply(applied);
+            assertEquals(sorted(after), sorted(applied), delta.encode());
+        }
+    }
+
+    @Test
+    public void testNoChange() throws FieldSelectionParamStringParseException {
+        ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(new Random(SelectionFixtures.SEED), 20);
+        FieldSelectionDelta delta = FieldSelectionDelta.compute(5, selections, SelectionFixtures.copyOf(selections));
+        assertTrue(delta.isEmpty());
+        assertEquals("D5", delta.encode());
+        assertTrue(FieldSelectionDelta.parse("D5").isEmpty());
+        assertTrue(FieldSelectionDelta.parse(" D5_ ").isEmpty()); // trailing delimiter, as in the param string
+    }
+
+    @Test
+    public void testUnknownFieldsIgnored() throws FieldSelectionParamStringParseException {
+        ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(new Random(SelectionFixtures.SEED), 20);
+        String expected = SelectionFixtures.describe(selections);
+        FieldSelectionDelta.parse("D1_R1x1y1pp0no_U2x2y2pp0cs").apply(selections);
+        assertEquals(expected, SelectionFixtures.describe(selections));
+    }
+
+    @Test
+    public void testMalformed() {
+        String[] malformed = {"", "D", "X1", "D1x", "D1__A1x1y1pp0no", "D1_Q1x1y1pp0no", "D1_A1x1y", "D1_A", "D99999999999999999999"};
+        for (String deltaString : malformed) {
+            assertThrows(FieldSelectionParamStringParseException.class, () -> FieldSelectionDelta.parse(deltaString), deltaString);
+        }
+    }
+
+    /**
+     * return copy of before with some fields removed, added, with other
+     * states or other Ki67 state
+     */
+    private static ArrayList<FieldOfView> change(Random random, List<FieldOfView> before) {
+        ArrayList<FieldOfView> after = new ArrayList<FieldOfView>();
+        for (FieldOfView field : before) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    break; // removed
+                case 1:
+                    after.add(new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                            ViewingState.values()[random.nextInt(ViewingState.values().length)],
+                            ScoringState.values()[random.nextInt(ScoringState.values().length)],
+                            field.getKi67State()));
+                    break;
+                case 2:
+                    after.add(new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                            field.getViewingState(), field.getScoringState(),
+                            Ki67State.values()[random.nextInt(Ki67State.values().length)]));
+                    break;
+                default:
+                    after.add(new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                            field.getViewingState(), field.getScoringState(), field.getKi67State()));
+                    break;
+            }
+        }
+        // new fields ... at locations not used by before (x of randomSelections() are far apart)
+        for (FieldOfView field : SelectionFixtures.randomSelections(random, random.nextInt(5))) {
+            after.add(new FieldOfView(field.getX(), field.getY() + 1, field.getDiamter() + 20000,
+                    field.getViewingState(), field.getScoringState(), field.getKi67State()));
+        }
+        Collections.shuffle(after, random);
+        return after;
+    }
+
+    private static String sorted(List<FieldOfView> selections) {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(selections);
+        Collections.sort(result, BY_LOCATION);
+        return SelectionFixtures.describe(result);
+    }
+}
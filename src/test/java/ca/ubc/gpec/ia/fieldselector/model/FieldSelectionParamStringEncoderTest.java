@@ -0,0 +1,117 @@
+/*
+ * the streaming encoder must write exactly what the original string
+ * concatenation wrote, and the parser must read it back
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionParamStringEncoderTest {
+
+    @Test
+    public void testEmpty() throws FieldSelectionParamStringParseException {
+        ArrayList<FieldOfView> selections = new ArrayList<FieldOfView>();
+        assertEquals("", FieldSelectionParamStringEncoder.encode(selections));
+        assertEquals(0, FieldSelectionParamStringEncoder.length(selections));
+        assertEquals(0, new FieldSelectionParamStringParser("").getAllSelections().size());
+    }
+
+    @Test
+    public void testSameAsConcatenation() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(20));
+            assertEquals(concatenate(selections), FieldSelectionParamStringEncoder.encode(selections));
+        }
+    }
+
+    @Test
+    public void testLength() throws IOException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(20));
+            String encoded = FieldSelectionParamStringEncoder.encode(selections);
+            assertEquals(encoded.length(), FieldSelectionParamStringEncoder.length(selections), encoded);
+            for (FieldOfView field : selections) {
+                StringBuilder single = new StringBuilder();
+                FieldSelectionParamStringEncoder.encode(field, single);
+                assertEquals(single.length(), FieldSelectionParamStringEncoder.length(field), single.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testAppendable() throws IOException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 100; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(20));
+            StringWriter out = new StringWriter();
+            new FieldSelectionParamStringParser(selections).writeFieldSelectionParamString(out);
+            assertEquals(FieldSelectionParamStringEncoder.encode(selections), out.toString());
+            assertEquals(out.toString(), new FieldSelectionParamStringParser(selections).generateFieldSelectionParamString());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws FieldSelectionParamStringParseException {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(20));
+            String encoded = FieldSelectionParamStringEncoder.encode(selections);
+            ArrayList<FieldOfView> parsed = new FieldSelectionParamStringParser(encoded).getAllSelections();
+            assertEquals(SelectionFixtures.describe(selections), SelectionFixtures.describe(parsed), encoded);
+            assertEquals(encoded, FieldSelectionParamStringEncoder.encode(parsed));
+        }
+    }
+
+    /**
+     * the original generateFieldSelectionParamString()
+     */
+    private static String concatenate(ArrayList<FieldOfView> selections) {
+        String result = "";
+        for (FieldOfView field : selections) {
+            result = result + field.getX() + FieldSelectionParamStringParser.TAG_X + field.getY() + FieldSelectionParamStringParser.TAG_Y
+                    + field.getDiamter() + FieldSelectionParamStringParser.TAG_KI67_PP
+                    + FieldSelectionParamStringParser.ki67StateToNumericCode(field.getKi67State());
+            switch (field.getViewingState()) {
+                case CURRENT:
+                    result = result + FieldSelectionParamStringParser.TAG_VIEWING_STATE_CURRENT;
+                    break;
+                case PREVIEW:
+                    result = result + FieldSelectionParamStringParser.TAG_VIEWING_STATE_PREVIEW;
+                    break;
+                case NOT_CURRENT:
+                    result = result + FieldSelectionParamStringParser.TAG_VIEWING_STATE_NOT_CURRENT;
+                    break;
+                default:
+                    break;
+            }
+            switch (field.getScoringState()) {
+                case NOT_SCORED:
+                    result = result + FieldSelectionParamStringParser.TAG_SCORING_STATE_NOT_SCORED;
+                    break;
+                case SCORING:
+                    result = result + FieldSelectionParamStringParser.TAG_SCORING_STATE_SCORING;
+                    break;
+                case SCORED:
+                    result = result + FieldSelectionParamStringParser.TAG_SCORING_STATE_SCORED;
+                    break;
+                default:
+                    break;
+            }
+            result = result + FieldSelectionParamStringParser.DELIMITER;
+        }
+        return result.length() == 0 ? "" : result.substring(0, result.length() - FieldSelectionParamStringParser.DELIMITER.length());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * the single pass scanner must accept exactly what the original split based
+ * parsing accepted, with the same selections ... and reject the rest with the
+ * same exception
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionParamStringScannerTest {
+
+    private static final String EXAMPLE = "3822x4856y4000pp0no_13474x4347y4000pp1no_34563x5981y4000pp2ns_46164x3418y4000pp4no_7299x1828y4000pp3cs";
+    private static final String[] CASES = {
+        // empty
+        "", " ", "\t\n ", "_", "__", " _ ",
+        // well formed
+        EXAMPLE, "1x2y3pp0no", "-1x-2y3pp0no", "0x0y0pp4cs", "1x2y3pp0pi",
+        "2147483647x-2147483648y2147483647pp0no",
+        // no or some state flags
+        "1x2y3pp0", "1x2y3pp0c", "1x2y3pp0s", "1x2y3pp0sc", "1x2y3pp0cc",
+        // whitespace
+        " \t3822x4856y4000pp0no\n", "1x2y3pp0no _4x5y6pp1cs", "1x2y3pp0no_ 4x5y6pp1cs",
+        "1x 2y3pp0no", "1 x2y3pp0no", "1x2y3 pp0no", "1x2y3pp0 no",
+        // trailing / leading delimiters, empty selections
+        "1x2y3pp0no_", "1x2y3pp0no___", "1x2y3pp0no_ ", "_1x2y3pp0no", "1x2y3pp0no__4x5y6pp1cs",
+        "1x2y3pp0no_ _4x5y6pp1cs", "1x2y3pp0no___4x5y6pp1cs_",
+        // stray x / y after the state flags, second pp
+        "3822x4856y4000pp0nox", "3822x4856y4000pp0noy", "3822x4856y4000pp0noxy", "3822x4856y4000pp0noyx",
+        "3822x4856y4000pp0nxo", "3822x4856y4000pp0xno", "3822x4856y4000pp0pp1no", "1x2y3pp0nox_4x5y6pp1csy",
+        // int overflow
+        "2147483648x1y1pp0no", "1x-2147483649y1pp0no", "1x1y99999999999pp0no", "1x1y1pp99999999999no",
+        "1x1y1pp4294967296no",
+        // signs, unknown Ki67 level
+        "+1x+2y+3pp+0no", "--1x2y3pp0no", "1x2y3pp7no", "1x2y3pp-1no",
+        // missing or misplaced parts
+        "x2y3pp0no", "1x2y", "1x2y3", "1x2y3pp", "1x2y3ppno", "1y2x3pp0no", "1x2x3y4pp0no",
+        "1x2y3p0no", "1x2y3ppp0no", "1x2y3pp0zz", "1x2y3pp0non", "abc", "x", "y", "pp"
+    };
+
+    @Test
+    public void testCases() {
+        for (String paramString : CASES) {
+            assertEquals(parseBySplit(paramString), parse(paramString), paramString);
+        }
+    }
+
+    @Test
+    public void testNull() {
+        assertEquals("", parse(null));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 20000; i++) {
+            String paramString = SelectionFixtures.randomParamString(random);
+            assertEquals(parseBySplit(paramString), parse(paramString), paramString);
+        }
+    }
+
+    @Test
+    public void testWellFormedNeedsNoFallback() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 1000; i++) {
+            ArrayList<FieldOfView> selections = SelectionFixtures.randomSelections(random, random.nextInt(20));
+            String paramString = FieldSelectionParamStringEncoder.encode(selections) + (i % 2 == 0 ? "" : "__");
+            ArrayList<FieldOfView> scanned = new ArrayList<FieldOfView>();
+            int error = FieldSelectionParamStringScanner.scan(paramString, 0, paramString.length(),
+                    (x, y, diameter, viewingState, scoringState, ki67State)
+                    -> scanned.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State)));
+            assertEquals(FieldSelectionParamStringScanner.NO_ERROR, error, paramString);
+            assertEquals(SelectionFixtures.describe(selections), SelectionFixtures.describe(scanned), paramString);
+        }
+    }
+
+    @Test
+    public void testScanSelection() {
+        // used on its own by FieldSelectionDelta.parse()
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 20000; i++) {
+            String selectionString = SelectionFixtures.randomParamString(random).replace("_", "");
+            ArrayList<FieldOfView> scanned = new ArrayList<FieldOfView>();
+            int error = FieldSelectionParamStringScanner.scanSelection(selectionString, 0, selectionString.length(),
+                    (x, y, diameter, viewingState, scoringState, ki67State)
+                    -> scanned.add(new FieldOfView(x, y, diameter, viewingState, scoringState, ki67State)));
+            String expected;
+            try {
+                ArrayList<FieldOfView> split = new ArrayList<FieldOfView>();
+                split.add(FieldSelectionParamStringParser.parseSelectionBySplit(selectionString, selectionString));
+                expected = SelectionFixtures.describe(split);
+            } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+                expected = "rejected";
+            }
+            assertEquals(expected, error == FieldSelectionParamStringScanner.NO_ERROR ? SelectionFixtures.describe(scanned) : "rejected", selectionString);
+        }
+    }
+
+    /**
+     * return selections parsed by the FieldSelectionParamStringParser
+     * constructor, or the exception thrown
+     */
+    private static String parse(String paramString) {
+        try {
+            return SelectionFixtures.describe(new FieldSelectionParamStringParser(paramString).getAllSelections());
+        } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * return selections parsed as the original constructor did, or the
+     * exception thrown
+     */
+    private static String parseBySplit(String paramString) {
+        try {
+            String trimmed = paramString.trim();
+            ArrayList<FieldOfView> selections = new ArrayList<FieldOfView>();
+            if (trimmed.length() > 0) {
+                for (String selectionString : trimmed.split(FieldSelectionParamStringParser.DELIMITER)) {
+                    selections.add(FieldSelectionParamStringParser.parseSelectionBySplit(selectionString, trimmed));
+                }
+            }
+            return SelectionFixtures.describe(selections);
+        } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * tryParse() / validate() must accept exactly what the
+ * FieldSelectionParamStringParser constructor accepts, and point at the first
+ * error
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ca.ubc.gpec.ia.fieldselector.exception.FieldSelectionParamStringParseException;
+import ca.ubc.gpec.ia.fieldselector.model.FieldSelectionParseResult.ErrorKind;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author samuelc
+ */
+public class FieldSelectionParseResultTest {
+
+    @Test
+    public void testErrorKindAndOffset() {
+        assertError("x2y3pp0no", ErrorKind.BAD_X, 0);
+        assertError("1x2y3pp0no_x2y3pp0no", ErrorKind.BAD_X, 11);
+        assertError("  x2y3pp0no", ErrorKind.BAD_X, 2); // offset within the whole string
+        assertError("1x2y3pp0no_1x2z3pp0no", ErrorKind.BAD_Y, 14);
+        assertError("1x2y3p0no", ErrorKind.BAD_DIAMETER, 5);
+        assertError("1x2y3ppno", ErrorKind.BAD_KI67_LEVEL, 7);
+        assertError("1x2y3pp0zz", ErrorKind.BAD_STATE_FLAGS, 8);
+        assertError("2147483648x1y1pp0no", ErrorKind.NUMBER_OVERFLOW, 0);
+        assertError("1x1y1pp99999999999no", ErrorKind.NUMBER_OVERFLOW, 7);
+        assertError("1x2y3pp0no__4x5y6pp1cs", ErrorKind.EMPTY_SELECTION, 11);
+        assertError("_1x2y3pp0no", ErrorKind.EMPTY_SELECTION, 0);
+    }
+
+    @Test
+    public void testValid() {
+        assertValid(null, 0, 0);
+        assertValid(" \t", 0, 0);
+        assertValid("1x2y3pp0no_4x5y6pp1cs", 2, 0);
+        assertValid(" 1x2y3pp0no_4x5y6pp1cs__ ", 2, 0);
+        assertValid("3822x4856y4000pp0nox", 1, 1); // split based rules only
+        assertValid("1x2y3pp0no_3822x4856y4000pp0pp1no", 2, 1);
+    }
+
+    @Test
+    public void testLenient() {
+        String paramString = "1x2y3pp0no__bad_4x5y6pp1cs";
+        FieldSelectionParseResult result = FieldSelectionParamStringParser.tryParse(paramString, true);
+        assertEquals(ErrorKind.EMPTY_SELECTION, result.getErrorKind());
+        assertEquals(11, result.getErrorOffset());
+        assertEquals(2, result.getErrorCount());
+        assertEquals(2, result.getFieldCount());
+        assertEquals(2, result.getSelections().size());
+
+        result = FieldSelectionParamStringParser.tryParse(paramString, false);
+        assertEquals(1, result.getErrorCount());
+        assertEquals(0, result.getFieldCount());
+        assertEquals(0, result.getSelections().size()); // all or nothing
+    }
+
+    @Test
+    public void testSameAsConstructor() {
+        Random random = new Random(SelectionFixtures.SEED);
+        for (int i = 0; i < 20000; i++) {
+            String paramString = SelectionFixtures.randomParamString(random);
+            FieldSelectionParseResult result = FieldSelectionParamStringParser.tryParse(paramString, false);
+            FieldSelectionParseResult validated = FieldSelectionParamStringParser.validate(paramString, false);
+            String expected;
+            try {
+                expected = SelectionFixtures.describe(new FieldSelectionParamStringParser(paramString).getAllSelections());
+            } catch (FieldSelectionParamStringParseException | RuntimeException e) {
+                expected = "rejected";
+            }
+            assertEquals(expected, result.isValid() ? SelectionFixtures.describe(result.getSelections()) : "rejected", paramString);
+            assertEquals(result.isValid(), validated.isValid(), paramString);
+            assertEquals(result.getFieldCount(), validated.getFieldCount(), paramString);
+            assertEquals(result.getErrorOffset(), validated.getErrorOffset(), paramString);
+            assertNull(validated.getSelections());
+            if (result.isValid()) {
+                assertEquals(result.getFieldCount(), FieldSelectionParamStringParser.tryParse(paramString, true).getFieldCount(), paramString);
+            }
+        }
+    }
+
+    private static void assertError(String paramString, ErrorKind errorKind, int errorOffset) {
+        for (FieldSelectionParseResult result : new FieldSelectionParseResult[]{
+            FieldSelectionParamStringParser.tryParse(paramString, false),
+            FieldSelectionParamStringParser.validate(paramString, false)}) {
+            assertEquals(errorKind, result.getErrorKind(), paramString);
+            assertEquals(errorOffset, result.getErrorOffset(), paramString);
+            assertEquals(0, result.getFieldCount(), paramString);
+        }
+    }
+
+    private static void assertValid(String paramString, int fieldCount, int legacyCount) {
+        FieldSelectionParseResult result = FieldSelectionParamStringParser.tryParse(paramString, false);
+        assertTrue(result.isValid(), paramString);
+        assertEquals(-1, result.getErrorOffset(), paramString);
+        assertEquals(fieldCount, result.getFieldCount(), paramString);
+        assertEquals(fieldCount, result.getSelections().size(), paramString);
+        assertEquals(legacyCount, result.getLegacyCount(), paramString);
+    }
+}
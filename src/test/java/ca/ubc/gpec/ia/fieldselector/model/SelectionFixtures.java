@@ -0,0 +1,138 @@
+/*
+ * random selections and param strings shared by the model tests
+ *
+ * everything is generated from a seeded Random i.e. a failing case can be
+ * reproduced by running the test again.
+ */
+package ca.ubc.gpec.ia.fieldselector.model;
+
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.Ki67State;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ScoringState;
+import ca.ubc.gpec.ia.fieldselector.model.FieldOfView.ViewingState;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ * @author samuelc
+ */
+final class SelectionFixtures {
+
+    static final long SEED = 20130821L;
+    // pieces random param strings are made of ... mostly the tokens of the format
+    private static final String[] TOKENS = {
+        "0", "1", "4", "7", "12", "3822", "4000", "-5", "+5",
+        "2147483647", "2147483648", "-2147483648", "99999999999",
+        "x", "y", "pp", "p", "c", "n", "o", "i", "s", "z",
+        "_", "_", "__", " ", "\t", "\n"
+    };
+
+    private SelectionFixtures() {
+        // static methods only
+    }
+
+    /**
+     * return count random selections, no two at the same location (see
+     * FieldSelectionDelta)
+     *
+     * @param random
+     * @param count
+     * @return
+     */
+    static ArrayList<FieldOfView> randomSelections(Random random, int count) {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(count);
+        for (int i = 0; i < count; i++) {
+            int x;
+            int y;
+            switch (random.nextInt(8)) {
+                case 0:
+                    // extremes of the int range
+                    x = random.nextBoolean() ? Integer.MAX_VALUE - i : Integer.MIN_VALUE + i;
+                    y = random.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+                    break;
+                case 1:
+                    // negative i.e. outside of the image
+                    x = -1 - i;
+                    y = -random.nextInt(1000);
+                    break;
+                default:
+                    x = i * 1000 + random.nextInt(1000);
+                    y = random.nextInt(100000);
+                    break;
+            }
+            int diameter = random.nextInt(4) == 0 ? random.nextInt(10000) : 4000; // long runs, see FieldSelectionBinaryCodec
+            result.add(new FieldOfView(x, y, diameter,
+                    ViewingState.values()[random.nextInt(ViewingState.values().length)],
+                    ScoringState.values()[random.nextInt(ScoringState.values().length)],
+                    Ki67State.values()[random.nextInt(Ki67State.values().length)]));
+        }
+        return result;
+    }
+
+    /**
+     * return random (mostly malformed) param string
+     *
+     * @param random
+     * @return
+     */
+    static String randomParamString(Random random) {
+        StringBuilder result = new StringBuilder();
+        if (random.nextInt(3) == 0) {
+            // well formed, then damaged at one place
+            result.append(FieldSelectionParamStringEncoder.encode(randomSelections(random, 1 + random.nextInt(4))));
+            int pos = random.nextInt(result.length() + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    result.insert(pos, TOKENS[random.nextInt(TOKENS.length)]);
+                    break;
+                case 1:
+                    if (pos < result.length()) {
+                        result.deleteCharAt(pos);
+                    }
+                    break;
+                default:
+                    result.setLength(pos);
+                    break;
+            }
+            return result.toString();
+        }
+        int tokens = random.nextInt(16);
+        for (int i = 0; i < tokens; i++) {
+            result.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * return all attributes of selections (FieldOfView.equals() ignores some
+     * of them) ... compare these in tests
+     *
+     * @param selections
+     * @return
+     */
+    static String describe(List<? extends FieldOfView> selections) {
+        StringBuilder result = new StringBuilder();
+        for (FieldOfView field : selections) {
+            result.append(field.getX()).append(',').append(field.getY()).append(',').append(field.getDiamter())
+                    .append(',').append(field.getViewingState()).append(',').append(field.getScoringState())
+                    .append(',').append(field.getKi67State()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * return copy of selections i.e. new FieldOfView objects
+     *
+     * @param selections
+     * @return
+     */
+    static ArrayList<FieldOfView> copyOf(List<? extends FieldOfView> selections) {
+        ArrayList<FieldOfView> result = new ArrayList<FieldOfView>(selections.size());
+        for (FieldOfView field : selections) {
+            result.add(new FieldOfView(field.getX(), field.getY(), field.getDiamter(),
+                    field.getViewingState(), field.getScoringState(), field.getKi67State()));
+        }
+        return result;
+    }
+}